@@ -1,6 +1,15 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
 
 /**
  * This BaseGraph class contains stores a set of nodes, along with a set of
@@ -11,8 +20,9 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
     // Each node contains unique data along with two lists of directed edges
     protected class Node {
         public NodeType data;
-        public List<Edge> edgesLeaving = new LinkedList<>();
-        public List<Edge> edgesEntering = new LinkedList<>();
+        public int id; // the node's position in nodesById
+        public List<Edge> edgesLeaving = newEdgeList();
+        public List<Edge> edgesEntering = newEnteringList(edgesLeaving);
 
         public Node(NodeType data) {
             this.data = data;
@@ -36,9 +46,16 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
         }
     }
 
+    // Nodes can also be retrieved by id; the slots of removed nodes hold null,
+    // so ids are never reused while the graph exists
+    protected ArrayList<Node> nodesById = new ArrayList<>();
+
     protected int edgeCount = 0;
     // Edges can be retrieved through the edge lists in either connected node
 
+    // Incremented by every change to the graph, so caches can detect stale results
+    protected long version = 0;
+
     /**
      * Constructor for BaseGraph that provides the map the graph uses.
      * 
@@ -49,6 +66,73 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
         this.nodes = map;
     }
 
+    /**
+     * Create the list that holds the edges leaving a new node.
+     *
+     * @return an empty list of edges
+     */
+    protected List<Edge> newEdgeList() {
+        return new LinkedList<>();
+    }
+
+    /**
+     * Create the list that holds the edges entering a new node.
+     *
+     * @param edgesLeaving the list holding the edges leaving that node
+     * @return an empty list of edges
+     */
+    protected List<Edge> newEnteringList(List<Edge> edgesLeaving) {
+        return newEdgeList();
+    }
+
+    /**
+     * Add a new edge to the edge lists of the nodes it connects.
+     *
+     * @param edge the edge to add
+     */
+    protected void linkEdge(Edge edge) {
+        edge.predecessor.edgesLeaving.add(edge);
+        edge.successor.edgesEntering.add(edge);
+    }
+
+    /**
+     * Return the node at the other end of an edge from the provided node.
+     *
+     * @param edge the edge to follow
+     * @param from the node at one end of that edge
+     * @return the node at the other end of that edge
+     */
+    protected Node opposite(Edge edge, Node from) {
+        return edge.predecessor == from ? edge.successor : edge.predecessor;
+    }
+
+    /**
+     * Create a node, give it the next unused id, and store it in the graph.
+     *
+     * @param data is the data item stored in the new node
+     * @return the new node
+     */
+    protected Node addNode(NodeType data) {
+        Node node = new Node(data);
+        node.id = nodesById.size();
+        nodesById.add(node);
+        nodes.put(data, node);
+        return node;
+    }
+
+    /**
+     * Take a node out of the graph's map and id list, leaving its edges as
+     * they are.
+     *
+     * @param data is the data item stored in the node to be removed
+     * @return the removed node
+     */
+    protected Node detachNode(NodeType data) {
+        Node node = nodes.remove(data);
+        nodesById.set(node.id, null);
+        return node;
+    }
+
     /**
      * Insert a new node into the graph.
      * 
@@ -60,7 +144,8 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
     public boolean insertNode(NodeType data) {
         if (nodes.containsKey(data))
             return false; // throws NPE when data's null
-        nodes.put(data, new Node(data));
+        addNode(data);
+        this.version++;
         return true;
     }
 
@@ -77,13 +162,15 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
         // remove this node from nodes collection
         if (!nodes.containsKey(data))
             return false; // throws NPE when data==null
-        Node oldNode = nodes.remove(data);
+        Node oldNode = detachNode(data);
         // remove all edges entering neighboring nodes from this one
         for (Edge edge : oldNode.edgesLeaving)
             edge.successor.edgesEntering.remove(edge);
         // remove all edges leaving neighboring nodes toward this one
         for (Edge edge : oldNode.edgesEntering)
             edge.predecessor.edgesLeaving.remove(edge);
+        this.edgeCount -= countEdges(oldNode);
+        this.version++;
         return true;
     }
 
@@ -98,6 +185,86 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
         return nodes.containsKey(data);
     }
 
+    /**
+     * Return the id of the node containing the provided data. Ids are assigned
+     * in insertion order and stay the same until the node is removed.
+     *
+     * @param data the node contents to look for
+     * @return the id of that node
+     * @throws NoSuchElementException if data is not found in the graph
+     */
+    public int nodeId(NodeType data) {
+        return nodes.get(data).id; // throws NSE when data is not found
+    }
+
+    /**
+     * Return the data stored in the node with the provided id.
+     *
+     * @param id the id of the node
+     * @return the data stored in that node
+     * @throws NoSuchElementException if no node in the graph has that id
+     */
+    public NodeType nodeData(int id) {
+        return nodeById(id).data;
+    }
+
+    /**
+     * Return a bound on node ids: every node's id is lower than this bound.
+     * Ids of removed nodes are not reused, so some ids below the bound may
+     * belong to no node.
+     *
+     * @return one more than the highest id given to a node
+     */
+    public int nodeIdBound() {
+        return nodesById.size();
+    }
+
+    /**
+     * Pass every edge leaving a node to the provided visitor, without
+     * creating a list of those edges.
+     *
+     * @param id      the id of the node whose edges are visited
+     * @param visitor receives the id of each edge's successor and its weight
+     * @throws NoSuchElementException if no node in the graph has that id
+     */
+    public void forEachOutEdge(int id, GraphADT.EdgeVisitor visitor) {
+        Node node = nodeById(id);
+        visitEdges(node, node.edgesLeaving, visitor);
+    }
+
+    /**
+     * Pass every edge entering a node to the provided visitor, without
+     * creating a list of those edges.
+     *
+     * @param id      the id of the node whose edges are visited
+     * @param visitor receives the id of each edge's predecessor and its weight
+     * @throws NoSuchElementException if no node in the graph has that id
+     */
+    public void forEachInEdge(int id, GraphADT.EdgeVisitor visitor) {
+        Node node = nodeById(id);
+        visitEdges(node, node.edgesEntering, visitor);
+    }
+
+    private Node nodeById(int id) {
+        Node node = id >= 0 && id < nodesById.size() ? nodesById.get(id) : null;
+        if (node == null)
+            throw new NoSuchElementException("No node with id " + id);
+        return node;
+    }
+
+    private void visitEdges(Node node, List<Edge> edges, GraphADT.EdgeVisitor visitor) {
+        // index array lists directly, so no iterator is created for them
+        if (edges instanceof RandomAccess) {
+            for (int i = 0; i < edges.size(); i++) {
+                Edge edge = edges.get(i);
+                visitor.visit(opposite(edge, node).id, edge.data.doubleValue());
+            }
+        } else {
+            for (Edge edge : edges)
+                visitor.visit(opposite(edge, node).id, edge.data.doubleValue());
+        }
+    }
+
     /**
      * Return the number of nodes in the graph
      * 
@@ -128,13 +295,14 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
             // when an edge alread exists within the graph, update its weight
             Edge existingEdge = getEdgeHelper(pred, succ);
             existingEdge.data = weight;
+            this.version++;
         } catch (NoSuchElementException e) {
             // otherwise create a new edges
             Edge newEdge = new Edge(weight, predNode, succNode);
             this.edgeCount++;
             // and insert it into each of its adjacent nodes' respective lists
-            predNode.edgesLeaving.add(newEdge);
-            succNode.edgesEntering.add(newEdge);
+            linkEdge(newEdge);
+            this.version++;
         }
         return true;
     }
@@ -156,6 +324,7 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
             oldEdge.successor.edgesEntering.remove(oldEdge);
             // and decrement the edge count before removing
             this.edgeCount--;
+            this.version++;
             return true;
         } catch (NoSuchElementException e) {
             // when no such edge exists, return false instead
@@ -213,6 +382,191 @@ public class BaseGraph<NodeType, EdgeType extends Number> {
         return this.edgeCount;
     }
 
+    /**
+     * Return the version of the graph, which changes whenever nodes or edges
+     * are inserted, removed or updated. Results computed from the graph remain
+     * valid for as long as this version stays the same.
+     *
+     * @return the current version of the graph
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Return the number of distinct edges connected to a node, counting a
+     * self loop only once.
+     */
+    protected int countEdges(Node node) {
+        int count = node.edgesLeaving.size();
+        for (Edge edge : node.edgesEntering)
+            if (edge.predecessor != node)
+                count++;
+        return count;
+    }
+
+    /**
+     * Create an empty batch of changes to this graph. Changes recorded in the
+     * batch do not affect the graph until the batch is applied.
+     *
+     * @return a new batch for this graph
+     */
+    public Batch newBatch() {
+        return new Batch();
+    }
+
+    /**
+     * A Batch collects node and edge changes and applies them together. Each
+     * node touched by the batch has its edge lists scanned and compacted once,
+     * no matter how many of the batch's changes involve it, and the graph's
+     * version is incremented once for the whole batch.
+     *
+     * Changes are applied in this order: node removals, node insertions, then
+     * edge changes. When several edge changes name the same pair of nodes,
+     * only the last one recorded is applied. Edge changes naming a node that
+     * is not in the graph once the node changes are applied are ignored.
+     */
+    public class Batch {
+        private Set<NodeType> nodeRemovals = new LinkedHashSet<>();
+        private Set<NodeType> nodeInsertions = new LinkedHashSet<>();
+        // the last change recorded for each pair: a weight, or null to remove
+        private Map<NodeType, Map<NodeType, EdgeType>> edgeChanges = new LinkedHashMap<>();
+        private boolean applied = false;
+
+        /**
+         * Record the insertion of a new node.
+         *
+         * @param data is the data item stored in the new node
+         * @return this batch
+         * @throws NullPointerException if data is null
+         */
+        public Batch insertNode(NodeType data) {
+            if (data == null)
+                throw new NullPointerException("null node data not allowed");
+            nodeInsertions.add(data);
+            return this;
+        }
+
+        /**
+         * Record the removal of a node along with all of its edges.
+         *
+         * @param data is the data item stored in the node to be removed
+         * @return this batch
+         * @throws NullPointerException if data is null
+         */
+        public Batch removeNode(NodeType data) {
+            if (data == null)
+                throw new NullPointerException("null node data not allowed");
+            nodeRemovals.add(data);
+            return this;
+        }
+
+        /**
+         * Record the insertion of an edge, or the update of its weight when
+         * the edge already exists.
+         *
+         * @param pred   is the data item contained in the edge's predecesor node
+         * @param succ   is the data item contained in the edge's successor node
+         * @param weight is the non-negative data item stored in the edge
+         * @return this batch
+         */
+        public Batch insertEdge(NodeType pred, NodeType succ, EdgeType weight) {
+            if (weight == null)
+                throw new NullPointerException("null edge weight not allowed");
+            edgeChanges.computeIfAbsent(pred, p -> new LinkedHashMap<>()).put(succ, weight);
+            return this;
+        }
+
+        /**
+         * Record the removal of an edge.
+         *
+         * @param pred the data item contained in the source node for the edge
+         * @param succ the data item contained in the target node for the edge
+         * @return this batch
+         */
+        public Batch removeEdge(NodeType pred, NodeType succ) {
+            edgeChanges.computeIfAbsent(pred, p -> new LinkedHashMap<>()).put(succ, null);
+            return this;
+        }
+
+        /**
+         * Apply every recorded change to the graph. A batch can only be
+         * applied once.
+         *
+         * @return the number of node and edge changes that modified the graph
+         * @throws IllegalStateException if this batch was already applied
+         */
+        public int apply() {
+            if (applied)
+                throw new IllegalStateException("batch was already applied");
+            applied = true;
+            int changed = 0;
+            // edges removed by this batch, and the nodes whose lists hold them
+            Set<Edge> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<Node> touched = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (NodeType data : nodeRemovals) {
+                if (!nodes.containsKey(data))
+                    continue;
+                Node oldNode = detachNode(data);
+                for (Edge edge : oldNode.edgesLeaving)
+                    if (removed.add(edge))
+                        touched.add(opposite(edge, oldNode));
+                for (Edge edge : oldNode.edgesEntering)
+                    if (removed.add(edge))
+                        touched.add(opposite(edge, oldNode));
+                changed++;
+            }
+            for (NodeType data : nodeInsertions) {
+                if (nodes.containsKey(data))
+                    continue;
+                addNode(data);
+                changed++;
+            }
+            for (Map.Entry<NodeType, Map<NodeType, EdgeType>> changes : edgeChanges.entrySet()) {
+                if (!nodes.containsKey(changes.getKey()))
+                    continue;
+                Node predNode = nodes.get(changes.getKey());
+                // index the predecessor's remaining edges once for all of its changes
+                Map<NodeType, Edge> leaving = new HashMap<>();
+                for (Edge edge : predNode.edgesLeaving)
+                    if (!removed.contains(edge))
+                        leaving.put(opposite(edge, predNode).data, edge);
+                for (Map.Entry<NodeType, EdgeType> change : changes.getValue().entrySet()) {
+                    if (!nodes.containsKey(change.getKey()))
+                        continue;
+                    Edge existing = leaving.get(change.getKey());
+                    if (change.getValue() == null) {
+                        // removal: mark the edge so both lists drop it when compacted
+                        if (existing == null)
+                            continue;
+                        removed.add(existing);
+                        touched.add(existing.predecessor);
+                        touched.add(existing.successor);
+                        leaving.remove(change.getKey());
+                    } else if (existing != null) {
+                        existing.data = change.getValue();
+                    } else {
+                        Node succNode = nodes.get(change.getKey());
+                        Edge newEdge = new Edge(change.getValue(), predNode, succNode);
+                        linkEdge(newEdge);
+                        leaving.put(change.getKey(), newEdge);
+                        edgeCount++;
+                    }
+                    changed++;
+                }
+            }
+            // compact the edge lists of every touched node in a single pass each
+            for (Node node : touched) {
+                node.edgesLeaving.removeIf(removed::contains);
+                node.edgesEntering.removeIf(removed::contains);
+            }
+            edgeCount -= removed.size();
+            if (changed > 0)
+                version++;
+            return changed;
+        }
+    }
+
 
 /*_kcole9_*/
     /**
@@ -0,0 +1,79 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A BoundedPathResult is the answer to a shortest path query that ran under a
+ * QueryControl. A complete result holds the shortest path and its cost. When
+ * the search was stopped early, the result holds the best answer found so far:
+ * the cheapest path to the end node discovered before stopping (if any), whose
+ * cost is an upper bound on the shortest path cost, along with a lower bound
+ * on that cost, which is the cost of the last node the search settled.
+ */
+public class BoundedPathResult<NodeType> {
+
+    /**
+     * How the search that produced a result ended.
+     */
+    public enum Status {
+        COMPLETE, TIMED_OUT, CANCELLED
+    }
+
+    private final Status status;
+    private final List<NodeType> path;
+    private final double cost;
+    private final double lowerBound;
+    private final int settledCount;
+
+    /**
+     * Creates a result.
+     *
+     * @param status       how the search ended
+     * @param path         the best path found, empty when none was found
+     * @param cost         the cost of that path, or infinity when none was found
+     * @param lowerBound   a lower bound on the shortest path cost
+     * @param settledCount the number of nodes the search settled
+     */
+    public BoundedPathResult(Status status, List<NodeType> path, double cost, double lowerBound,
+            int settledCount) {
+        this.status = status;
+        this.path = path;
+        this.cost = cost;
+        this.lowerBound = lowerBound;
+        this.settledCount = settledCount;
+    }
+
+    /** @return how the search ended */
+    public Status getStatus() {
+        return status;
+    }
+
+    /** @return true if the path is known to be a shortest path */
+    public boolean isComplete() {
+        return status == Status.COMPLETE;
+    }
+
+    /** @return true if a path to the end node was found, shortest or not */
+    public boolean hasPath() {
+        return !path.isEmpty();
+    }
+
+    /** @return the data of the nodes along the best path found */
+    public List<NodeType> getPath() {
+        return Collections.unmodifiableList(path);
+    }
+
+    /** @return the cost of the best path found, or infinity without one */
+    public double getCost() {
+        return cost;
+    }
+
+    /** @return a cost that the shortest path is known not to be below */
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    /** @return the number of nodes the search settled before it ended */
+    public int getSettledCount() {
+        return settledCount;
+    }
+}
@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A CsrGraph is a read-only snapshot of a graph in compressed sparse row form:
+ * nodes are numbered 0..n-1, and the edges leaving (or entering) each node are
+ * stored contiguously in primitive arrays. Search engines that need dense node
+ * ids and tight inner loops work on this snapshot instead of walking the Node
+ * and Edge objects of a BaseGraph.
+ *
+ * A snapshot does not follow later changes to the graph it was taken from.
+ */
+public class CsrGraph<NodeType> {
+
+    private final List<NodeType> dataById;
+    private final HashMap<NodeType, Integer> ids;
+
+    // edges leaving node u are stored at indexes outStart[u] .. outStart[u+1]-1
+    private final int[] outStart;
+    private final int[] outTarget;
+    private final double[] outWeight;
+
+    // edges entering node u are stored at indexes inStart[u] .. inStart[u+1]-1
+    private final int[] inStart;
+    private final int[] inSource;
+    private final double[] inWeight;
+
+    /**
+     * Builds a snapshot from parallel edge arrays. Node ids are the indexes
+     * of dataById, and edge i connects pred[i] to succ[i] with weight[i].
+     *
+     * @param dataById  the data of each node, indexed by node id
+     * @param edgeCount the number of edges in the arrays
+     * @param pred      the predecessor node id of each edge
+     * @param succ      the successor node id of each edge
+     * @param weight    the weight of each edge
+     */
+    public CsrGraph(List<NodeType> dataById, int edgeCount, int[] pred, int[] succ, double[] weight) {
+        int n = dataById.size();
+        this.dataById = new ArrayList<>(dataById);
+        this.ids = new HashMap<>(n * 2);
+        for (int id = 0; id < n; id++)
+            ids.put(dataById.get(id), id);
+        this.outStart = new int[n + 1];
+        this.outTarget = new int[edgeCount];
+        this.outWeight = new double[edgeCount];
+        this.inStart = new int[n + 1];
+        this.inSource = new int[edgeCount];
+        this.inWeight = new double[edgeCount];
+        // count the degree of each node, then turn the counts into start offsets
+        for (int i = 0; i < edgeCount; i++) {
+            outStart[pred[i] + 1]++;
+            inStart[succ[i] + 1]++;
+        }
+        for (int u = 0; u < n; u++) {
+            outStart[u + 1] += outStart[u];
+            inStart[u + 1] += inStart[u];
+        }
+        int[] outFill = outStart.clone();
+        int[] inFill = inStart.clone();
+        for (int i = 0; i < edgeCount; i++) {
+            int o = outFill[pred[i]]++;
+            outTarget[o] = succ[i];
+            outWeight[o] = weight[i];
+            int e = inFill[succ[i]]++;
+            inSource[e] = pred[i];
+            inWeight[e] = weight[i];
+        }
+    }
+
+    /**
+     * Takes a snapshot of the nodes and edges currently stored in a graph.
+     *
+     * @param graph the graph to copy
+     * @return a compressed sparse row copy of that graph
+     */
+    public static <NodeType, EdgeType extends Number> CsrGraph<NodeType> of(
+            BaseGraph<NodeType, EdgeType> graph) {
+        List<NodeType> dataById = new ArrayList<>(graph.keySet());
+        // map the graph's own node ids, which may have gaps, to dense ids
+        int[] denseIds = new int[graph.nodeIdBound()];
+        int[] graphIds = new int[dataById.size()];
+        for (int id = 0; id < dataById.size(); id++) {
+            graphIds[id] = graph.nodeId(dataById.get(id));
+            denseIds[graphIds[id]] = id;
+        }
+        // undirected graphs store each edge once but list it at both ends
+        int[] edgeCount = { 0 };
+        for (int id = 0; id < graphIds.length; id++)
+            graph.forEachOutEdge(graphIds[id], (neighborId, weight) -> edgeCount[0]++);
+        int[] pred = new int[edgeCount[0]];
+        int[] succ = new int[edgeCount[0]];
+        double[] weight = new double[edgeCount[0]];
+        edgeCount[0] = 0;
+        for (int id = 0; id < graphIds.length; id++) {
+            int from = id;
+            graph.forEachOutEdge(graphIds[id], (neighborId, edgeWeight) -> {
+                pred[edgeCount[0]] = from;
+                succ[edgeCount[0]] = denseIds[neighborId];
+                weight[edgeCount[0]] = edgeWeight;
+                edgeCount[0]++;
+            });
+        }
+        return new CsrGraph<>(dataById, edgeCount[0], pred, succ, weight);
+    }
+
+    /**
+     * Returns the number of nodes in the snapshot.
+     *
+     * @return the number of nodes, which is also one more than the largest id
+     */
+    public int getNodeCount() {
+        return dataById.size();
+    }
+
+    /**
+     * Returns the number of edges in the snapshot.
+     *
+     * @return the number of directed edges
+     */
+    public int getEdgeCount() {
+        return outTarget.length;
+    }
+
+    /**
+     * Looks up the id of the node holding the provided data.
+     *
+     * @param data the node data to look up
+     * @return the id of that node
+     * @throws NoSuchElementException if no node holds that data
+     */
+    public int id(NodeType data) {
+        Integer id = ids.get(data);
+        if (id == null)
+            throw new NoSuchElementException("node " + data + " not in graph");
+        return id;
+    }
+
+    /**
+     * Checks whether a node holds the provided data.
+     *
+     * @param data the node data to look for
+     * @return true if some node holds that data, false otherwise
+     */
+    public boolean containsNode(NodeType data) {
+        return ids.containsKey(data);
+    }
+
+    /**
+     * Returns the data stored in the node with the provided id.
+     *
+     * @param id the id of the node
+     * @return the data stored in that node
+     */
+    public NodeType data(int id) {
+        return dataById.get(id);
+    }
+
+    /** @return the index of the first edge leaving node u */
+    public int firstOut(int u) {
+        return outStart[u];
+    }
+
+    /** @return one past the index of the last edge leaving node u */
+    public int endOut(int u) {
+        return outStart[u + 1];
+    }
+
+    /** @return the successor of the leaving edge at index e */
+    public int outTarget(int e) {
+        return outTarget[e];
+    }
+
+    /** @return the weight of the leaving edge at index e */
+    public double outWeight(int e) {
+        return outWeight[e];
+    }
+
+    /**
+     * Returns the weight of the edge from one node to another. When the
+     * snapshot holds several such edges, a search always takes the cheapest,
+     * so that is the weight returned.
+     *
+     * @param u the id of the predecessor
+     * @param v the id of the successor
+     * @return the smallest weight of an edge from u to v
+     * @throws NoSuchElementException when there is no edge from u to v
+     */
+    public double edgeWeight(int u, int v) {
+        double weight = Double.POSITIVE_INFINITY;
+        boolean found = false;
+        for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+            if (outTarget[e] == v) {
+                weight = Math.min(weight, outWeight[e]);
+                found = true;
+            }
+        }
+        if (!found)
+            throw new NoSuchElementException("no edge exists between these nodes");
+        return weight;
+    }
+
+    /** @return the index of the first edge entering node u */
+    public int firstIn(int u) {
+        return inStart[u];
+    }
+
+    /** @return one past the index of the last edge entering node u */
+    public int endIn(int u) {
+        return inStart[u + 1];
+    }
+
+    /** @return the predecessor of the entering edge at index e */
+    public int inSource(int e) {
+        return inSource[e];
+    }
+
+    /** @return the weight of the entering edge at index e */
+    public double inWeight(int e) {
+        return inWeight[e];
+    }
+
+    /**
+     * Computes the shortest paths from one node to every other node using
+     * Dijkstra's algorithm.
+     *
+     * @param source the id of the starting node
+     * @return the tree of shortest paths leaving that node
+     */
+    public ShortestPathTree<NodeType> shortestPathTree(int source) {
+        int n = getNodeCount();
+        double[] cost = new double[n];
+        int[] pred = new int[n];
+        search(source, ShortestPathTree.NONE, cost, pred);
+        return new ShortestPathTree<>(this, source, cost, pred);
+    }
+
+    /**
+     * Computes the shortest path from one node to another using Dijkstra's
+     * algorithm, stopping as soon as the target is settled instead of
+     * settling every node the source reaches.
+     *
+     * @param source the id of the starting node
+     * @param target the id of the destination node
+     * @return the path from source to target, with node ids in this graph
+     * @throws NoSuchElementException when target cannot be reached
+     */
+    public PathResult<NodeType> shortestPath(int source, int target) {
+        int n = getNodeCount();
+        double[] cost = new double[n];
+        int[] pred = new int[n];
+        if (!search(source, target, cost, pred))
+            throw new NoSuchElementException("no path exists between start and end nodes");
+        int hops = 0;
+        for (int id = target; id != source; id = pred[id])
+            hops++;
+        int[] path = new int[hops + 1];
+        for (int id = target, i = hops; i >= 0; id = pred[id], i--)
+            path[i] = id;
+        double[] legCosts = new double[hops];
+        for (int i = 0; i < hops; i++)
+            legCosts[i] = edgeWeight(path[i], path[i + 1]);
+        return new PathResult<>(path, legCosts, this::data);
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from source, filling in the cost and
+     * predecessor of every node it reaches, until target is settled or, when
+     * target is NONE, until every reachable node is settled.
+     *
+     * @return true if target was settled, or when target is NONE
+     */
+    private boolean search(int source, int target, double[] cost, int[] pred) {
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        Arrays.fill(pred, ShortestPathTree.NONE);
+        NodeHeap queue = new NodeHeap(64);
+        cost[source] = 0.0;
+        queue.add(source, 0.0);
+        while (!queue.isEmpty()) {
+            int u = queue.peekNode();
+            double uCost = queue.peekCost();
+            queue.remove();
+            // skip queue entries whose node has since been reached more cheaply
+            if (uCost > cost[u])
+                continue;
+            if (u == target)
+                return true;
+            for (int e = outStart[u]; e < outStart[u + 1]; e++) {
+                int v = outTarget[e];
+                double vCost = uCost + outWeight[e];
+                if (vCost < cost[v]) {
+                    cost[v] = vCost;
+                    pred[v] = u;
+                    queue.add(v, vCost);
+                }
+            }
+        }
+        return target == ShortestPathTree.NONE;
+    }
+}
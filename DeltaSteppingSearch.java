@@ -0,0 +1,274 @@
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This DeltaSteppingSearch class computes one-to-all shortest paths over a
+ * CsrGraph with the delta-stepping algorithm. Tentative costs are grouped into
+ * buckets of width delta. The nodes of the lowest non-empty bucket have their
+ * light edges (weight <= delta) relaxed in parallel until the bucket stops
+ * changing, and then their heavy edges are relaxed in parallel once. Costs are
+ * updated with lock-free compare-and-set, so workers never block each other.
+ *
+ * The costs found are the same as those found by Dijkstra's algorithm. A small
+ * delta behaves like Dijkstra's algorithm with little parallelism, and a large
+ * delta behaves like Bellman-Ford with lots of parallelism and wasted work;
+ * suggestDelta picks a width based on the graph's edge weights.
+ */
+public class DeltaSteppingSearch<NodeType> {
+
+    // frontiers smaller than this are relaxed by a single worker
+    private static final int SEQUENTIAL_THRESHOLD = 512;
+
+    private final CsrGraph<NodeType> graph;
+    private final double delta;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a search engine over a graph.
+     *
+     * @param graph the graph to search
+     * @param delta the width of each bucket, in the same units as edge weights
+     * @param pool  the workers that relax edges in parallel
+     * @throws IllegalArgumentException if delta is not positive
+     */
+    public DeltaSteppingSearch(CsrGraph<NodeType> graph, double delta, ForkJoinPool pool) {
+        if (!(delta > 0.0))
+            throw new IllegalArgumentException("bucket width must be positive");
+        this.graph = graph;
+        this.delta = delta;
+        this.pool = pool;
+    }
+
+    /**
+     * Creates a search engine over a graph using the common fork-join pool and
+     * the bucket width chosen by suggestDelta.
+     *
+     * @param graph the graph to search
+     */
+    public DeltaSteppingSearch(CsrGraph<NodeType> graph) {
+        this(graph, suggestDelta(graph), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Suggests a bucket width for a graph: the average edge weight, which for
+     * walking times in seconds keeps each bucket to roughly one hop of work.
+     *
+     * @param graph the graph that will be searched
+     * @return a positive bucket width
+     */
+    public static double suggestDelta(CsrGraph<?> graph) {
+        double total = 0.0;
+        int m = graph.getEdgeCount();
+        for (int e = 0; e < m; e++)
+            total += graph.outWeight(e);
+        return m == 0 || total <= 0.0 ? 1.0 : total / m;
+    }
+
+    /**
+     * Computes the shortest paths from one node to every other node.
+     *
+     * @param start the data item in the starting node
+     * @return the tree of shortest paths leaving that node
+     * @throws java.util.NoSuchElementException if start is not in the graph
+     */
+    public ShortestPathTree<NodeType> shortestPathTree(NodeType start) {
+        return shortestPathTree(graph.id(start));
+    }
+
+    /**
+     * Computes the shortest paths from one node to every other node.
+     *
+     * @param source the id of the starting node
+     * @return the tree of shortest paths leaving that node
+     */
+    public ShortestPathTree<NodeType> shortestPathTree(int source) {
+        int n = graph.getNodeCount();
+        // costs are stored as raw long bits, which order the same way as
+        // non-negative doubles and can be updated with compare-and-set
+        AtomicLongArray costBits = new AtomicLongArray(n);
+        long infinity = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        for (int u = 0; u < n; u++)
+            costBits.set(u, infinity);
+        costBits.set(source, Double.doubleToRawLongBits(0.0));
+
+        // only non-empty buckets are kept, so a cost of any number of widths
+        // costs one entry instead of a bucket for every width below it
+        TreeMap<Long, IntList> buckets = new TreeMap<>();
+        int[] seen = new int[n]; // marks nodes already taken from the current bucket
+        int seenStamp = 0;
+        addToBucket(buckets, source, 0.0);
+        while (!buckets.isEmpty()) {
+            long i = buckets.firstKey();
+            IntList settled = new IntList();
+            int settledStamp = ++seenStamp;
+            // relax light edges until no node re-enters this bucket
+            for (IntList bucket = buckets.remove(i); bucket != null; bucket = buckets.remove(i)) {
+                IntList frontier = new IntList();
+                int frontierStamp = ++seenStamp;
+                for (int k = 0; k < bucket.size(); k++) {
+                    int u = bucket.get(k);
+                    // skip stale entries for nodes that have moved to a lower bucket
+                    if (bucketIndex(Double.longBitsToDouble(costBits.get(u))) != i || seen[u] == frontierStamp)
+                        continue;
+                    frontier.add(u);
+                    if (seen[u] < settledStamp)
+                        settled.add(u);
+                    seen[u] = frontierStamp;
+                }
+                IntList improved = relax(frontier, costBits, true);
+                for (int k = 0; k < improved.size(); k++) {
+                    int v = improved.get(k);
+                    addToBucket(buckets, v, Double.longBitsToDouble(costBits.get(v)));
+                }
+            }
+            // heavy edges always lead to later buckets, so relax them once
+            IntList improved = relax(settled, costBits, false);
+            for (int k = 0; k < improved.size(); k++) {
+                int v = improved.get(k);
+                addToBucket(buckets, v, Double.longBitsToDouble(costBits.get(v)));
+            }
+        }
+
+        double[] cost = new double[n];
+        for (int u = 0; u < n; u++)
+            cost[u] = Double.longBitsToDouble(costBits.get(u));
+        return new ShortestPathTree<>(graph, source, cost, predecessors(source, cost));
+    }
+
+    /**
+     * Relaxes either the light or the heavy edges leaving a set of nodes, in
+     * parallel when the set is large enough.
+     *
+     * @return the nodes whose cost decreased, possibly with repeats
+     */
+    private IntList relax(IntList frontier, AtomicLongArray costBits, boolean light) {
+        if (frontier.size() < SEQUENTIAL_THRESHOLD)
+            return relaxRange(frontier, 0, frontier.size(), costBits, light);
+        return pool.invoke(new RelaxTask(frontier, 0, frontier.size(), costBits, light));
+    }
+
+    private IntList relaxRange(IntList frontier, int from, int to, AtomicLongArray costBits, boolean light) {
+        IntList improved = new IntList();
+        for (int k = from; k < to; k++) {
+            int u = frontier.get(k);
+            double uCost = Double.longBitsToDouble(costBits.get(u));
+            for (int e = graph.firstOut(u); e < graph.endOut(u); e++) {
+                double weight = graph.outWeight(e);
+                if ((weight <= delta) != light)
+                    continue;
+                int v = graph.outTarget(e);
+                long candidate = Double.doubleToRawLongBits(uCost + weight);
+                // lock-free minimum: retry until our cost is stored or beaten
+                long current = costBits.get(v);
+                while (candidate < current) {
+                    if (costBits.compareAndSet(v, current, candidate)) {
+                        improved.add(v);
+                        break;
+                    }
+                    current = costBits.get(v);
+                }
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * Splits a frontier between fork-join workers, each of which collects the
+     * nodes it improved into its own list.
+     */
+    private class RelaxTask extends RecursiveTask<IntList> {
+        private static final long serialVersionUID = 1L;
+
+        private final IntList frontier;
+        private final int from;
+        private final int to;
+        private final AtomicLongArray costBits;
+        private final boolean light;
+
+        RelaxTask(IntList frontier, int from, int to, AtomicLongArray costBits, boolean light) {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.costBits = costBits;
+            this.light = light;
+        }
+
+        @Override
+        protected IntList compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD)
+                return relaxRange(frontier, from, to, costBits, light);
+            int middle = (from + to) >>> 1;
+            RelaxTask left = new RelaxTask(frontier, from, middle, costBits, light);
+            left.fork();
+            IntList improved = new RelaxTask(frontier, middle, to, costBits, light).compute();
+            improved.addAll(left.join());
+            return improved;
+        }
+    }
+
+    /**
+     * Rebuilds predecessors from the final costs by walking tight edges (edges
+     * where cost[u] + weight == cost[v]) outward from the source. Walking them
+     * breadth first keeps zero-weight ties from forming predecessor cycles.
+     */
+    private int[] predecessors(int source, double[] cost) {
+        int[] pred = new int[cost.length];
+        Arrays.fill(pred, ShortestPathTree.NONE);
+        boolean[] reached = new boolean[cost.length];
+        IntList queue = new IntList();
+        queue.add(source);
+        reached[source] = true;
+        for (int k = 0; k < queue.size(); k++) {
+            int u = queue.get(k);
+            for (int e = graph.firstOut(u); e < graph.endOut(u); e++) {
+                int v = graph.outTarget(e);
+                if (!reached[v] && cost[u] + graph.outWeight(e) == cost[v]) {
+                    reached[v] = true;
+                    pred[v] = u;
+                    queue.add(v);
+                }
+            }
+        }
+        return pred;
+    }
+
+    private long bucketIndex(double cost) {
+        return (long) (cost / delta);
+    }
+
+    private void addToBucket(TreeMap<Long, IntList> buckets, int node, double cost) {
+        buckets.computeIfAbsent(bucketIndex(cost), index -> new IntList()).add(node);
+    }
+
+    /**
+     * A growable list of primitive ints.
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        void addAll(IntList other) {
+            if (size + other.size > values.length)
+                values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+            System.arraycopy(other.values, 0, values, size, other.size);
+            size += other.size;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -14,6 +14,33 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Timeout;
 import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.HashSet;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.function.BiFunction;
+import java.util.stream.IntStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 
 /**
@@ -58,6 +85,20 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
         }
     }
 
+    /**
+     * While a search runs under a QueryControl, a SearchProgress records how
+     * far it got: the number of nodes settled, the cost of the last one, and
+     * whether the search was stopped before the end node was settled.
+     */
+    protected class SearchProgress {
+        public int settledCount = 0;
+        public double settledCost = 0.0;
+        public BoundedPathResult.Status status = BoundedPathResult.Status.COMPLETE;
+    }
+
+    // when set, rejects searches between nodes with no path between them
+    protected ReachabilityIndex<NodeType> reachabilityIndex = null;
+
     /**
      * Constructor that sets the map that the graph uses.
      */
@@ -65,6 +106,17 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
         super(new BasicMap<>());
     }
 
+    /**
+     * Turns on a reachability index for this graph, so that a search between
+     * two nodes with no path between them fails right away, instead of first
+     * exploring every node reachable from the start. The index is rebuilt on
+     * the first search after the graph changes.
+     */
+    public void useReachabilityIndex() {
+        if (reachabilityIndex == null)
+            reachabilityIndex = new ReachabilityIndex<>(this);
+    }
+
     /**
      * This helper method creates a network of SearchNodes while computing the
      * shortest path between the provided start and end locations. The
@@ -81,6 +133,29 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
      *                                correspond to a graph node
      */
     protected SearchNode computeShortestPath(NodeType start, NodeType end) {
+        return computeShortestPath(start, end, null, new SearchProgress());
+    }
+
+    /**
+     * This helper method computes the shortest path like the two argument
+     * version, but checks the provided control every few settled nodes and
+     * stops the search once the control is cancelled or its deadline passes.
+     * A stopped search records its status in progress and returns the best
+     * SearchNode found so far for the end node, which is null when the end
+     * node was not reached, and whose cost is only an upper bound otherwise.
+     *
+     * @param start    the data item in the starting node for the path
+     * @param end      the data item in the destination node for the path
+     * @param control  the deadline and cancellation to respect, or null
+     * @param progress records how far the search got
+     * @return SearchNode for the end node within the best path found
+     * @throws NoSuchElementException when the search completes without
+     *                                finding a path from start to end, or
+     *                                when either start or end data do not
+     *                                correspond to a graph node
+     */
+    protected SearchNode computeShortestPath(NodeType start, NodeType end, QueryControl control,
+            SearchProgress progress) {
         // implement in step 5.3
         //use java.util.PriorityQueue to greedily explore shorter path possibilities before long ones
 	//use MapADT and BasicMap to keep track of the nodes already visited (and found shortest paths for)
@@ -90,6 +165,10 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
 	if (!this.containsNode(start) || !this.containsNode(end)){
 		throw new NoSuchElementException("specified start or end node not present in the graph");
 	}
+	//reject unreachable pairs without searching when the reachability index is on
+	if (reachabilityIndex != null && !reachabilityIndex.canReach(start,end)){
+		throw new NoSuchElementException("no path exists between start and end nodes");
+	}
 	//create a new instance of BasicMap
 	BasicMap<NodeType,SearchNode> visitedNodes = new BasicMap<NodeType,SearchNode>();
 	//create priority queue to hold nodes not fully explored
@@ -105,14 +184,27 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
 	while (!queue.isEmpty()){
 		SearchNode currentSearchNode = queue.remove();
 		Node currentNode = currentSearchNode.node;
+		progress.settledCount++;
+		progress.settledCost = currentSearchNode.cost;
+		//the end node's cost is final once it leaves the queue, so stop searching
+		if (currentNode.data.equals(end)){
+			break;
+		}
+		//check the deadline and cancellation every few settled nodes
+		if (control != null && progress.settledCount % control.getCheckInterval() == 0){
+			if (control.isCancelled() || control.isExpired()){
+				progress.status = control.isCancelled() ? BoundedPathResult.Status.CANCELLED : BoundedPathResult.Status.TIMED_OUT;
+				return visitedNodes.containsKey(end) ? visitedNodes.get(end) : null;
+			}
+		}
 		//perform relaxation procedure on each edge adjacent to currentNode
 		for (Edge edge : currentNode.edgesLeaving){
-			Node destinationNode = edge.successor;
+			Node destinationNode = opposite(edge,currentNode);
 			//no need to check back to the predecessor node, since we already have this edge
 			if (currentSearchNode.predecessor != null && destinationNode == currentSearchNode.predecessor.node){
 				continue;
 			}
-			EdgeType edgeCost = getEdge(currentNode.data,destinationNode.data);
+			EdgeType edgeCost = edge.data;
 			//System.out.println("from " + currentNode.data.toString() + " to " + destinationNode.data.toString() + " : " + edgeCost.toString());
 			if (visitedNodes.containsKey(destinationNode.data) == false){
 				SearchNode predecessor = currentSearchNode;
@@ -191,6 +283,66 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
 	return shortestPath;
 	}
 
+    /**
+     * Returns the cost, node ids and node data along the shortest path from
+     * the node with the provided start value to the node with the provided end
+     * value, all found by a single search. The node data are looked up through
+     * this graph's node ids when they are read.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return the path found by the search
+     * @throws NoSuchElementException when no path from start to end is found
+     *                                or when either start or end data do not
+     *                                correspond to a graph node
+     */
+    public PathResult<NodeType> shortestPath(NodeType start, NodeType end) {
+	SearchNode endSearchNode = this.computeShortestPath(start,end);
+	//count the nodes along the path, then fill in their ids and leg weights from the end backwards
+	int length = 0;
+	for (SearchNode recentNode = endSearchNode; recentNode != null; recentNode = recentNode.predecessor){
+		length++;
+	}
+	int[] nodeIds = new int[length];
+	double[] legCosts = new double[length-1];
+	for (SearchNode recentNode = endSearchNode; recentNode != null; recentNode = recentNode.predecessor){
+		length--;
+		nodeIds[length] = recentNode.node.id;
+		if (recentNode.predecessor != null){
+			legCosts[length-1] = this.getEdge(recentNode.predecessor.node.data,recentNode.node.data).doubleValue();
+		}
+	}
+	return new PathResult<NodeType>(nodeIds,legCosts,this::nodeData);
+    }
+
+    /**
+     * Returns the shortest path from the node with the provided start value to
+     * the node with the provided end value, unless the provided control stops
+     * the search first. In that case the result holds the best path to the
+     * end node found so far (if any) and a lower bound on the shortest cost.
+     *
+     * @param start   the data item in the starting node for the path
+     * @param end     the data item in the destination node for the path
+     * @param control the deadline and cancellation to respect
+     * @return the complete or partial result of the search
+     * @throws NoSuchElementException when the search completes without
+     *                                finding a path from start to end, or
+     *                                when either start or end data do not
+     *                                correspond to a graph node
+     */
+    public BoundedPathResult<NodeType> shortestPathWithin(NodeType start, NodeType end, QueryControl control) {
+	SearchProgress progress = new SearchProgress();
+	SearchNode endSearchNode = this.computeShortestPath(start,end,control,progress);
+	//step backwards through the predecessor nodes, as in shortestPathData
+	LinkedList<NodeType> path = new LinkedList<>();
+	for (SearchNode recentNode = endSearchNode; recentNode != null; recentNode = recentNode.predecessor){
+		path.push(recentNode.node.data);
+	}
+	double cost = endSearchNode == null ? Double.POSITIVE_INFINITY : endSearchNode.cost;
+	double lowerBound = progress.status == BoundedPathResult.Status.COMPLETE ? cost : progress.settledCost;
+	return new BoundedPathResult<NodeType>(progress.status,path,cost,lowerBound,progress.settledCount);
+    }
+
     /**
      * Returns the cost of the path (sum over edge weights) of the shortest
      * path freom the node containing the start data to the node containing the
@@ -249,6 +401,74 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
   	return inputGraph;
   }
 
+  //helper method to confirm another search finds shortest paths of the same cost as a DijkstraGraph,
+  //from every stride-th node to every node, including pairs with no path
+  private static <NodeType> void assertSameShortestPaths(DijkstraGraph<NodeType,?> expected,
+		BiFunction<NodeType,NodeType,Double> actualCost, BiFunction<NodeType,NodeType,List<NodeType>> actualData, int stride){
+	List<NodeType> nodes = new ArrayList<NodeType>(expected.keySet());
+	for (int i=0; i<nodes.size(); i+=stride){
+		NodeType start = nodes.get(i);
+		for (NodeType end : nodes){
+			double expectedCost;
+			try {
+				expectedCost = expected.shortestPathCost(start,end);
+			} catch (NoSuchElementException e) {
+				Assertions.assertThrows(NoSuchElementException.class,() -> {
+							actualCost.apply(start,end);
+						},"Shortest path does not exist from " + start + " to " + end + "."
+						);
+				continue;
+			}
+			Assertions.assertEquals(expectedCost,actualCost.apply(start,end),1e-9,"Shortest path from " + start + " to " + end + " is the correct cost.");
+			//equally short paths may be chosen differently, so check the path follows edges of the graph at that cost
+			List<NodeType> path = actualData.apply(start,end);
+			Assertions.assertEquals(start,path.get(0),"Shortest path from " + start + " to " + end + " starts at the start.");
+			Assertions.assertEquals(end,path.get(path.size()-1),"Shortest path from " + start + " to " + end + " ends at the end.");
+			double pathCost = 0.0;
+			for (int j=1; j<path.size(); j++){
+				pathCost += expected.getEdge(path.get(j-1),path.get(j)).doubleValue();
+			}
+			Assertions.assertEquals(expectedCost,pathCost,1e-9,"Shortest path from " + start + " to " + end + " found with the correct sequence.");
+		}
+	}
+  }
+
+  //helper method to confirm a shortest path tree has the expected costs, and that every reached
+  //node's predecessor leads back to the source along edges that add up to its cost
+  private static void assertValidTree(ShortestPathTree<?> expected, ShortestPathTree<?> actual){
+	CsrGraph<?> graph = actual.getGraph();
+	for (int v=0; v<graph.getNodeCount(); v++){
+		Assertions.assertEquals(expected.cost(v),actual.cost(v),1e-9,"Node " + v + " has the correct cost.");
+		if (v == actual.getSource() || !actual.reaches(v)){
+			continue;
+		}
+		int pred = actual.predecessor(v);
+		boolean edgeFound = false;
+		for (int e=graph.firstOut(pred); e<graph.endOut(pred); e++){
+			edgeFound |= graph.outTarget(e) == v && Math.abs(actual.cost(pred) + graph.outWeight(e) - actual.cost(v)) <= 1e-9;
+		}
+		Assertions.assertTrue(edgeFound,"Node " + v + " is reached by an edge from its predecessor.");
+		//following predecessors never loops before reaching the source
+		Assertions.assertTrue(actual.pathIds(v).length <= graph.getNodeCount(),"Path to node " + v + " leads back to the source.");
+	}
+  }
+
+  //helper method to find the cheapest tour by trying every order of the stops after the first
+  private static double bruteForceTourCost(double[][] cost, int last, boolean[] visited, int remaining, boolean returnToStart){
+	if (remaining == 0){
+		return returnToStart ? cost[last][0] : 0.0;
+	}
+	double best = Double.POSITIVE_INFINITY;
+	for (int next=1; next<cost.length; next++){
+		if (!visited[next]){
+			visited[next] = true;
+			best = Math.min(best,cost[last][next] + bruteForceTourCost(cost,next,visited,remaining-1,returnToStart));
+			visited[next] = false;
+		}
+	}
+	return best;
+  }
+
   //helper method to build a standard DiijkstraGraph we can use for testing
   private static DijkstraGraph<Integer,Integer> buildGraphFromLecture (){
 	//build graph
@@ -361,4 +581,807 @@ public class DijkstraGraph<NodeType, EdgeType extends Number>
 			);
    }
 
+
+    /**
+    * Confirm a batch of changes is applied together with a single version change.
+    * @return
+    */
+   @Test
+   public void testBatchChanges(){
+	//build graph
+	DijkstraGraph<Integer,Integer> dijkstraGraph = buildGraphFromLecture();
+	long versionBefore = dijkstraGraph.getVersion();
+	int edgesBefore = dijkstraGraph.getEdgeCount();
+	//remove the edge used by the shortest path from 1 to 8, and make a detour cheaper
+	BaseGraph<Integer,Integer>.Batch batch = dijkstraGraph.newBatch();
+	batch.removeEdge(2,3);
+	batch.insertEdge(6,3,1);
+	batch.removeNode(7);
+	int changed = batch.apply();
+	Assertions.assertEquals(3,changed,"All batch changes were applied.");
+	Assertions.assertEquals(versionBefore + 1,dijkstraGraph.getVersion(),"Batch changes the version once.");
+	//removing node 7 also removes its 4 edges
+	Assertions.assertEquals(edgesBefore - 5,dijkstraGraph.getEdgeCount(),"Edge count reflects the batch.");
+	List<Integer> expectedShortestPathSequence = new LinkedList<Integer>(Arrays.asList(1,6,3,5,8));
+	List<Integer> actualShortestPathSequence = dijkstraGraph.shortestPathData(1,8);
+	Assertions.assertEquals(expectedShortestPathSequence,actualShortestPathSequence,"Shortest path uses the batch changes.");
+   }
+
+    /**
+    * Confirm a simplified graph finds shortest paths of the same cost as the graph
+    * it simplifies, on the campus map and on a graph with zero-weight clusters,
+    * chains with different weights in each direction, one-way chains and dead ends.
+    * @return
+    */
+   @Test
+   public void testSimplifiedGraph() throws IOException{
+	Integer[] insertArray = new Integer[19];
+	for (int i=0; i<insertArray.length; i++){
+		insertArray[i] = i+1;
+	}
+	DijkstraGraph<Integer,Integer> dijkstraGraph = buildDijkstraGraph(insertArray);
+	Integer[][] edgeArray = {
+		//1, 2 and 3 are joined by zero-weight edges both ways, with a one-way shortcut
+		{1,2,0},{2,1,0},{2,3,0},{3,2,0},{1,3,0},
+		{3,4,2},{4,3,2},
+		//a chain from 4 to 7 through 5 and 6, with 18 merged into 5 halfway along
+		{4,5,3},{5,4,3},{5,18,0},{18,5,0},{18,6,4},{6,18,4},{6,7,5},{7,6,5},
+		//a chain from 7 around to 8 that costs more going back
+		{7,11,2},{11,7,9},{11,12,2},{12,11,7},{12,8,1},{8,12,6},
+		{7,8,10},{8,7,10},{8,9,4},{9,8,4},{9,10,3},{10,9,3},
+		//a one-way chain from 8 to 9
+		{8,13,1},{13,14,1},{14,9,1},
+		//a dead-end chain leaving 10
+		{10,15,2},{15,10,2},{15,16,2},{16,15,2},{16,17,2},{17,16,2},
+		//19 reaches the graph, but nothing reaches 19
+		{19,1,1},
+		};
+	addEdges(dijkstraGraph,edgeArray);
+	SimplifiedGraph<Integer> simplifiedGraph = new SimplifiedGraph<Integer>(dijkstraGraph);
+	Assertions.assertTrue(simplifiedGraph.getNodeCount() < dijkstraGraph.getNodeCount(),"Clusters and chains are simplified away.");
+	assertSameShortestPaths(dijkstraGraph,simplifiedGraph::shortestPathCost,simplifiedGraph::shortestPathData,1);
+	//the campus map gives the same answers simplified
+	DijkstraGraph<String,Double> campusGraph = DotGraphLoader.load("campus.dot");
+	SimplifiedGraph<String> simplifiedCampus = new SimplifiedGraph<String>(campusGraph);
+	Assertions.assertTrue(simplifiedCampus.getNodeCount() < campusGraph.getNodeCount(),"Campus map is simplified.");
+	assertSameShortestPaths(campusGraph,simplifiedCampus::shortestPathCost,simplifiedCampus::shortestPathData,2);
+   }
+
+    /**
+    * Confirm an undirected graph stores each edge once and can traverse it both ways.
+    * @return
+    */
+   @Test
+   public void testUndirectedGraph(){
+	//build graph with one edge per pair of nodes
+	UndirectedDijkstraGraph<Integer,Integer> undirectedGraph = new UndirectedDijkstraGraph<Integer,Integer>();
+	for (int i=1; i<=4; i++){
+		undirectedGraph.insertNode(i);
+	}
+	undirectedGraph.insertEdge(1,2,4);
+	undirectedGraph.insertEdge(3,2,1);
+	undirectedGraph.insertEdge(3,4,2);
+	undirectedGraph.insertEdge(4,3,7); //updates the existing edge between 3 and 4
+	Assertions.assertEquals(3,undirectedGraph.getEdgeCount(),"Each pair of nodes is stored as one edge.");
+	Assertions.assertEquals(7,undirectedGraph.getEdge(3,4).intValue(),"Edge weights are shared by both directions.");
+	//paths can follow edges against the order they were inserted in
+	List<Integer> expectedShortestPathSequence = new LinkedList<Integer>(Arrays.asList(4,3,2,1));
+	Assertions.assertEquals(expectedShortestPathSequence,undirectedGraph.shortestPathData(4,1),"Shortest path found in reverse.");
+	Assertions.assertEquals(12.0,undirectedGraph.shortestPathCost(4,1),"Shortest path is the correct cost.");
+   }
+
+    /**
+    * Confirm a query under a control that never stops it finds the shortest path,
+    * and a cancelled query stops without throwing.
+    * @return
+    */
+   @Test
+   public void testQueryControl(){
+	//build graph
+	DijkstraGraph<Integer,Integer> dijkstraGraph = buildGraphFromLecture();
+	//a control without a deadline lets the search complete
+	BoundedPathResult<Integer> completeResult = dijkstraGraph.shortestPathWithin(1,8,QueryControl.cancellable());
+	Assertions.assertTrue(completeResult.isComplete(),"Search completed.");
+	Assertions.assertEquals(new LinkedList<Integer>(Arrays.asList(1,2,3,5,8)),completeResult.getPath(),"Shortest path found with the correct sequence.");
+	Assertions.assertEquals(50.0,completeResult.getCost(),"Shortest path is the correct cost.");
+	//a cancelled control checked after every settled node stops the search right away
+	QueryControl cancelled = QueryControl.cancellable().checkingEvery(1);
+	cancelled.cancel();
+	BoundedPathResult<Integer> cancelledResult = dijkstraGraph.shortestPathWithin(1,8,cancelled);
+	Assertions.assertEquals(BoundedPathResult.Status.CANCELLED,cancelledResult.getStatus(),"Search was cancelled.");
+	Assertions.assertFalse(cancelledResult.hasPath(),"No path to the end was found before cancelling.");
+	Assertions.assertEquals(1,cancelledResult.getSettledCount(),"Only the start node was settled.");
+   }
+
+    /**
+    * Confirm the reachability index rejects unreachable pairs, leaves other
+    * paths unchanged, and follows changes to the graph.
+    * @return
+    */
+   @Test
+   public void testReachabilityIndex(){
+	//build graph
+	DijkstraGraph<Integer,Integer> dijkstraGraph = buildGraphFromLecture();
+	dijkstraGraph.useReachabilityIndex();
+	//a path that does not exist is rejected
+	Assertions.assertThrows(NoSuchElementException.class,() -> {
+				dijkstraGraph.shortestPathData(8,7);
+			},"Shortest path does not exist."
+			);
+	//paths that exist are found as before
+	Assertions.assertEquals(new LinkedList<Integer>(Arrays.asList(1,2,3,5,8)),dijkstraGraph.shortestPathData(1,8),"Shortest path found with the correct sequence.");
+	Assertions.assertEquals(5.0,dijkstraGraph.shortestPathCost(6,7),"Shortest path is the correct cost.");
+	//once an edge connects them, the path is found
+	dijkstraGraph.insertEdge(8,6,1);
+	Assertions.assertEquals(new LinkedList<Integer>(Arrays.asList(8,6,7)),dijkstraGraph.shortestPathData(8,7),"Shortest path found after the graph changed.");
+   }
+
+    /**
+    * Confirm a single search returns the same path and cost as shortestPathData
+    * and shortestPathCost, along with its hops and the cost of each leg.
+    * @return
+    */
+   @Test
+   public void testPathResult(){
+	//build graph
+	DijkstraGraph<Integer,Integer> dijkstraGraph = buildGraphFromLecture();
+	PathResult<Integer> pathResult = dijkstraGraph.shortestPath(1,8);
+	Assertions.assertEquals(dijkstraGraph.shortestPathData(1,8),pathResult.getPath(),"Shortest path found with the correct sequence.");
+	Assertions.assertEquals(dijkstraGraph.shortestPathCost(1,8),pathResult.getCost(),"Shortest path is the correct cost.");
+	Assertions.assertEquals(4,pathResult.getHopCount(),"Shortest path has the correct number of hops.");
+	//each leg costs the weight of its edge (1->2, 2->3, 3->5, 5->8), and the ids match the node data
+	double[] expectedLegCosts = {9.0,23.0,2.0,16.0};
+	for (int leg = 0; leg < pathResult.getHopCount(); leg++){
+		Assertions.assertEquals(expectedLegCosts[leg],pathResult.getLegCost(leg),"Leg has the correct cost.");
+		Assertions.assertEquals(dijkstraGraph.nodeId(pathResult.getPath().get(leg)),pathResult.getNodeId(leg),"Node id matches the node data.");
+	}
+	//paths that do not exist still throw
+	Assertions.assertThrows(NoSuchElementException.class,() -> {
+				dijkstraGraph.shortestPath(8,7);
+			},"Shortest path does not exist."
+			);
+   }
+
+    /**
+    * Confirm every leg of a path reports exactly the time its edge has in the map,
+    * rather than the difference of two running totals, however the path was found.
+    * @return
+    */
+   @Test
+   public void testPathResultLegCosts() throws IOException{
+	DijkstraGraph<String,Double> campusGraph = DotGraphLoader.load("campus.dot");
+	CsrGraph<String> snapshot = CsrGraph.of(campusGraph);
+	List<String> names = new ArrayList<String>(campusGraph.keySet());
+	for (int i=0; i<names.size(); i+=7){
+		ShortestPathTree<String> tree = snapshot.shortestPathTree(snapshot.id(names.get(i)));
+		for (int j=0; j<names.size(); j+=3){
+			String start = names.get(i);
+			String end = names.get(j);
+			List<PathResult<String>> pathResults = Arrays.asList(campusGraph.shortestPath(start,end),
+				snapshot.shortestPath(snapshot.id(start),snapshot.id(end)),tree.pathResult(snapshot.id(end)));
+			for (PathResult<String> pathResult : pathResults){
+				List<String> path = pathResult.getPath();
+				double total = 0.0;
+				for (int leg=0; leg<pathResult.getHopCount(); leg++){
+					Assertions.assertEquals(campusGraph.getEdge(path.get(leg),path.get(leg+1)).doubleValue(),pathResult.getLegCost(leg),
+						"Leg " + leg + " from " + start + " to " + end + " costs exactly its edge's time.");
+					total += pathResult.getLegCost(leg);
+					Assertions.assertEquals(total,pathResult.getCostTo(leg+1),"Running cost adds up the legs.");
+				}
+				Assertions.assertEquals(campusGraph.shortestPathCost(start,end),pathResult.getCost(),"Total matches the search's cost.");
+			}
+		}
+	}
+   }
+
+    /**
+    * Confirm the edges visited for a node id are the edges leaving and entering
+    * that node, with their neighbours' ids and their weights.
+    * @return
+    */
+   @Test
+   public void testForEachEdge(){
+	//build graph
+	DijkstraGraph<Integer,Integer> dijkstraGraph = buildGraphFromLecture();
+	//edges leaving 1 go to 2, 6 and 7
+	List<Integer> successors = new LinkedList<Integer>();
+	double[] weightLeaving = {0.0};
+	dijkstraGraph.forEachOutEdge(dijkstraGraph.nodeId(1),(neighborId,weight) -> {
+		successors.add(dijkstraGraph.nodeData(neighborId));
+		weightLeaving[0] += weight;
+	});
+	successors.sort(null);
+	Assertions.assertEquals(Arrays.asList(2,6,7),successors,"Edges leaving the node are visited.");
+	Assertions.assertEquals(9.0+14.0+15.0,weightLeaving[0],"Edges leaving the node have the correct weights.");
+	//edges entering 8 come from 3, 4, 5 and 7
+	List<Integer> predecessors = new LinkedList<Integer>();
+	double[] weightEntering = {0.0};
+	dijkstraGraph.forEachInEdge(dijkstraGraph.nodeId(8),(neighborId,weight) -> {
+		predecessors.add(dijkstraGraph.nodeData(neighborId));
+		weightEntering[0] += weight;
+	});
+	predecessors.sort(null);
+	Assertions.assertEquals(Arrays.asList(3,4,5,7),predecessors,"Edges entering the node are visited.");
+	Assertions.assertEquals(19.0+6.0+16.0+44.0,weightEntering[0],"Edges entering the node have the correct weights.");
+	//ids of removed nodes belong to no node
+	int removedId = dijkstraGraph.nodeId(4);
+	dijkstraGraph.removeNode(4);
+	Assertions.assertTrue(removedId < dijkstraGraph.nodeIdBound(),"Node ids stay below the bound.");
+	Assertions.assertThrows(NoSuchElementException.class,() -> {
+				dijkstraGraph.forEachOutEdge(removedId,(neighborId,weight) -> {});
+			},"Removed node has no edges to visit."
+			);
+   }
+
+    /**
+    * Confirm an off-heap graph, in direct memory or mapped from files, finds the
+    * same shortest paths as a DijkstraGraph on the campus map, also after edges
+    * and nodes are removed and the freed edge records are reused.
+    * @return
+    */
+   @Test
+   public void testOffHeapGraph() throws IOException{
+	//load the campus map into all three graphs
+	DijkstraGraph<String,Double> campusGraph = DotGraphLoader.load("campus.dot");
+	OffHeapGraph<String> heapGraph = DotGraphLoader.load("campus.dot",new OffHeapGraph<String>());
+	Path directory = Files.createTempDirectory("offheap");
+	OffHeapGraph<String> mappedGraph = DotGraphLoader.load("campus.dot",new OffHeapGraph<String>(directory));
+	try {
+		Assertions.assertEquals(campusGraph.getEdgeCount(),heapGraph.getEdgeCount(),"Off-heap graph has every edge.");
+		assertSameShortestPaths(campusGraph,heapGraph::shortestPathCost,heapGraph::shortestPathData,4);
+		assertSameShortestPaths(campusGraph,mappedGraph::shortestPathCost,mappedGraph::shortestPathData,4);
+		//remove an edge of a long path and a node, then insert edges into the freed records
+		List<String> names = new ArrayList<String>(campusGraph.keySet());
+		List<String> path = campusGraph.shortestPathData(names.get(0),names.get(names.size()-1));
+		for (GraphADT<String,Double> graph : List.<GraphADT<String,Double>>of(campusGraph,heapGraph,mappedGraph)){
+			Assertions.assertTrue(graph.removeEdge(path.get(0),path.get(1)),"Edge is removed.");
+			Assertions.assertTrue(graph.removeNode(names.get(10)),"Node is removed.");
+			graph.insertEdge(names.get(20),names.get(30),1.0);
+			graph.insertEdge(names.get(30),names.get(40),0.5);
+		}
+		Assertions.assertEquals(campusGraph.getEdgeCount(),heapGraph.getEdgeCount(),"Off-heap graph has every remaining edge.");
+		assertSameShortestPaths(campusGraph,heapGraph::shortestPathCost,heapGraph::shortestPathData,4);
+		assertSameShortestPaths(campusGraph,mappedGraph::shortestPathCost,mappedGraph::shortestPathData,4);
+		//queries may run in parallel, each with its own search space
+		List<String> remaining = new ArrayList<String>(campusGraph.keySet());
+		long wrongCosts = IntStream.range(0,remaining.size()*remaining.size()).parallel().filter(pair -> {
+			String start = remaining.get(pair / remaining.size());
+			String end = remaining.get(pair % remaining.size());
+			try {
+				return campusGraph.shortestPathCost(start,end) != heapGraph.shortestPathCost(start,end);
+			} catch (NoSuchElementException e) {
+				return false;
+			}
+		}).count();
+		Assertions.assertEquals(0,(int) wrongCosts,"Parallel queries find the correct costs.");
+	} finally {
+		heapGraph.close();
+		mappedGraph.close();
+		try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator)
+				Files.delete(file);
+		}
+		Files.delete(directory);
+	}
+   }
+
+    /**
+    * Confirm delta-stepping finds the same costs as Dijkstra's algorithm, with
+    * valid predecessors, on the campus map and on a random graph large enough to
+    * relax edges in parallel, with zero-weight edges and edges much heavier than
+    * the bucket width.
+    * @return
+    */
+   @Test
+   public void testDeltaStepping() throws IOException{
+	ForkJoinPool pool = new ForkJoinPool(4);
+	try {
+		CsrGraph<String> campusGraph = CsrGraph.of(DotGraphLoader.load("campus.dot"));
+		DeltaSteppingSearch<String> campusSearch = new DeltaSteppingSearch<String>(campusGraph,DeltaSteppingSearch.suggestDelta(campusGraph),pool);
+		for (int source=0; source<campusGraph.getNodeCount(); source+=8){
+			assertValidTree(campusGraph.shortestPathTree(source),campusSearch.shortestPathTree(source));
+		}
+		int n = 20000;
+		int m = 80000;
+		Random random = new Random(27);
+		List<Integer> data = new ArrayList<Integer>();
+		for (int i=0; i<n; i++){
+			data.add(i);
+		}
+		int[] pred = new int[m];
+		int[] succ = new int[m];
+		double[] weight = new double[m];
+		for (int e=0; e<m; e++){
+			pred[e] = random.nextInt(n);
+			succ[e] = random.nextInt(n);
+			int kind = random.nextInt(10);
+			weight[e] = kind < 2 ? 0.0 : kind < 9 ? random.nextInt(6) * 0.5 : 100.0 + random.nextInt(100) * 0.5;
+		}
+		CsrGraph<Integer> randomGraph = new CsrGraph<Integer>(data,m,pred,succ,weight);
+		DeltaSteppingSearch<Integer> randomSearch = new DeltaSteppingSearch<Integer>(randomGraph,1.0,pool);
+		for (int source=0; source<n; source+=2500){
+			assertValidTree(randomGraph.shortestPathTree(source),randomSearch.shortestPathTree(source));
+		}
+	} finally {
+		pool.shutdown();
+	}
+   }
+
+    /**
+    * Confirm delta-stepping finds the same costs when paths are trillions of bucket
+    * widths long, or long enough that their bucket numbers no longer fit in a long,
+    * without making room for the empty buckets in between.
+    * @return
+    */
+   @Test
+   public void testDeltaSteppingWideCosts(){
+	ForkJoinPool pool = new ForkJoinPool(4);
+	try {
+		List<Integer> data = Arrays.asList(0,1,2,3,4,5);
+		//a heavy edge of 1e12 widths, then light and heavy edges beyond it, and a costlier direct route
+		int[] pred = {0,1,2,3,0,1,4};
+		int[] succ = {1,2,3,4,4,5,5};
+		double[] weight = {1e9,0.0005,0.0007,2e9,4e9,5e9,0.001};
+		CsrGraph<Integer> wideGraph = new CsrGraph<Integer>(data,pred.length,pred,succ,weight);
+		ShortestPathTree<Integer> wideTree = new DeltaSteppingSearch<Integer>(wideGraph,0.001,pool).shortestPathTree(0);
+		assertValidTree(wideGraph.shortestPathTree(0),wideTree);
+		Assertions.assertEquals(1e9 + 0.0005 + 0.0007 + 2e9,wideTree.cost(4),1e-3,"Long path is cheaper than the direct edge.");
+		//costs far beyond Long.MAX_VALUE widths all share the last bucket
+		double[] hugeWeight = {1e300,1.0,0.5,1e300,3e300,4e300,2.0};
+		CsrGraph<Integer> hugeGraph = new CsrGraph<Integer>(data,pred.length,pred,succ,hugeWeight);
+		assertValidTree(hugeGraph.shortestPathTree(0),new DeltaSteppingSearch<Integer>(hugeGraph,1.0,pool).shortestPathTree(0));
+	} finally {
+		pool.shutdown();
+	}
+   }
+
+    /**
+    * Confirm a map file above the parallel loading threshold is parsed the same
+    * in several chunks as in one, with lines straddling the naive split points
+    * and a pair of locations listed more than once.
+    * @return
+    */
+   @Test
+   public void testParallelMapLoading() throws IOException{
+	//write a map with a duplicated pair near its start and its end
+	Path file = Files.createTempFile("parallel",".dot");
+	try {
+		StringBuilder map = new StringBuilder("digraph campus {\n");
+		map.append("\t\"Dup A\" -> \"Dup B\" [seconds=5.0];\n");
+		Random random = new Random(28);
+		for (int i=0; i<30000; i++){
+			map.append("\t\"Place ").append(i % 5000).append("\" -> \"Place ").append(random.nextInt(5000))
+				.append("\" [seconds=").append(random.nextInt(1000) / 10.0).append("];\n");
+		}
+		map.append("\t\"Dup A\" -> \"Dup B\" [seconds=99.0];\n");
+		map.append("\t\"Dup B\" -> \"Dup A\" [seconds=42.0];\n");
+		map.append("}\n");
+		Files.write(file,map.toString().getBytes(StandardCharsets.UTF_8));
+		long size = Files.size(file);
+		Assertions.assertTrue(size > DotGraphLoader.MIN_PARALLEL_BYTES,"Map is large enough to be parsed in parallel.");
+		DotGraphLoader.ParsedMap single = DotGraphLoader.parse(file,1);
+		for (int chunks : new int[] {2,7,16}){
+			//the middle of the file falls inside a line, so the chunk boundary must move to the next line
+			Assertions.assertTrue(map.charAt((int) (size * (chunks / 2) / chunks) - 1) != '\n',"A line straddles the naive split point.");
+			DotGraphLoader.ParsedMap chunked = DotGraphLoader.parse(file,chunks);
+			Assertions.assertEquals(single.names,chunked.names,"Nodes are numbered by first appearance.");
+			Assertions.assertEquals(single.edgeCount,chunked.edgeCount,"Every line is parsed once.");
+			Assertions.assertTrue(Arrays.equals(single.start,chunked.start) && Arrays.equals(single.end,chunked.end)
+				&& Arrays.equals(single.seconds,chunked.seconds),"Edges are parsed in file order.");
+		}
+		Assertions.assertEquals(30003,single.edgeCount,"Every walkway line is parsed.");
+		//the loaded graph stores each direction of a walkway once, with the time listed first
+		DijkstraGraph<String,Double> graph = DotGraphLoader.load(file.toString());
+		HashSet<String> pairs = new HashSet<String>();
+		for (int i=0; i<single.edgeCount; i++){
+			pairs.add(single.start[i] + " " + single.end[i]);
+			pairs.add(single.end[i] + " " + single.start[i]);
+		}
+		Assertions.assertEquals(single.names.size(),graph.getNodeCount(),"Every location is loaded.");
+		Assertions.assertEquals(pairs.size(),graph.getEdgeCount(),"Duplicated pairs are loaded once.");
+		Assertions.assertEquals(5.0,graph.getEdge("Dup A","Dup B").doubleValue(),"First listed time is kept.");
+		Assertions.assertEquals(5.0,graph.getEdge("Dup B","Dup A").doubleValue(),"First listed time is kept in reverse.");
+	} finally {
+		Files.delete(file);
+	}
+   }
+
+    /**
+    * Confirm a line whose time is not a number fails loading with an IOException
+    * naming its line, whether the map is parsed in one chunk or in several.
+    * @return
+    */
+   @Test
+   public void testMalformedMapFile() throws IOException{
+	Path file = Files.createTempFile("malformed",".dot");
+	try {
+		//a small map, parsed as a single chunk
+		Files.write(file,Arrays.asList("digraph campus {","\t\"A\" -> \"B\" [seconds=5.0];","\t\"B\" -> \"C\" [seconds=soon];","}"));
+		Assertions.assertTrue(Files.size(file) < DotGraphLoader.MIN_PARALLEL_BYTES,"Small map is parsed in one chunk.");
+		IOException small = Assertions.assertThrows(IOException.class,() -> DotGraphLoader.load(file.toString()),"Small malformed map fails with an IOException.");
+		Assertions.assertTrue(small.getMessage().contains(file + " line 3:"),"Error names the file and line: " + small.getMessage());
+		//a large map with the same mistake near its end, parsed in one chunk and in several
+		List<String> lines = new ArrayList<String>();
+		lines.add("digraph campus {");
+		for (int i=0; i<40000; i++){
+			lines.add("\t\"Place " + i + "\" -> \"Place " + (i+1) + "\" [seconds=" + (i % 100) + ".5];");
+		}
+		lines.add(39000,"\t\"B\" -> \"C\" [seconds=soon];");
+		lines.add("}");
+		Files.write(file,lines);
+		Assertions.assertTrue(Files.size(file) > DotGraphLoader.MIN_PARALLEL_BYTES,"Large map can be parsed in parallel.");
+		for (int chunks : new int[] {1,4}){
+			IOException large = Assertions.assertThrows(IOException.class,() -> DotGraphLoader.parse(file,chunks),"Large malformed map fails with an IOException.");
+			Assertions.assertTrue(large.getMessage().contains(file + " line 39001:"),"Error names the line in " + chunks + " chunks: " + large.getMessage());
+			Assertions.assertTrue(large.getCause() instanceof NumberFormatException,"Error keeps the parse failure as its cause.");
+		}
+	} finally {
+		Files.delete(file);
+	}
+   }
+
+    /**
+    * Confirm location search lists names that start with the query before names
+    * with a word that starts with it, pages through them without gaps or
+    * repeats, and suggests close names for misspelled queries.
+    * @return
+    */
+   @Test
+   public void testLocationIndex() throws IOException{
+	LocationIndex index = new LocationIndex(Arrays.asList("Science Hall","Scott Hall","Sci Fi Center",
+		"Hall of Fame","Computer Sciences","Health Sciences Learning Center","Old Sciences Science Lab",
+		"Memorial Union","Union South","Union South Annex"));
+	//whole-name prefixes come first, then later words, each in alphabetical order and each name once
+	List<String> expected = Arrays.asList("Sci Fi Center","Science Hall","Scott Hall",
+		"Computer Sciences","Health Sciences Learning Center","Old Sciences Science Lab");
+	Assertions.assertEquals(expected,index.search("Sc",0,10),"Prefix matches are ranked in order.");
+	Assertions.assertEquals(Arrays.asList("Hall of Fame","Science Hall","Scott Hall"),index.search("hall",0,10),"Word prefix matches follow name prefix matches.");
+	//pages split the same ranking, and pages past the end are empty
+	Assertions.assertEquals(expected.subList(0,2),index.search("sc",0,2),"First page is correct.");
+	Assertions.assertEquals(expected.subList(2,4),index.search("sc",2,2),"Page crossing into word matches is correct.");
+	Assertions.assertEquals(expected.subList(4,6),index.search("sc",4,2),"Last full page is correct.");
+	Assertions.assertEquals(expected.subList(5,6),index.search("sc",5,10),"Partial last page is correct.");
+	Assertions.assertTrue(index.search("sc",6,10).isEmpty(),"Page just past the end is empty.");
+	Assertions.assertTrue(index.search("sc",100,10).isEmpty(),"Page far past the end is empty.");
+	Assertions.assertTrue(index.search("",0,10).isEmpty(),"Empty query matches nothing.");
+	//misspellings suggest the closest names, after any prefix matches
+	Assertions.assertEquals("Science Hall",index.bestMatch("Scince Hall"),"Misspelled name is suggested.");
+	Assertions.assertEquals("Memorial Union",index.bestMatch("memorail union"),"Swapped letters are suggested.");
+	Assertions.assertEquals(Arrays.asList("Union South","Union South Annex"),index.search("union sout",0,2),"Prefix matches come before misspellings.");
+	Assertions.assertEquals(null,index.bestMatch("Zzyzx Road"),"Nothing is suggested for unrelated names.");
+	//paging through a one-letter query on the campus map lists every match once
+	DijkstraGraph<String,Double> campusGraph = DotGraphLoader.load("campus.dot");
+	LocationIndex campusIndex = new LocationIndex(campusGraph.keySet());
+	List<String> all = campusIndex.search("s",0,campusGraph.getNodeCount());
+	Assertions.assertTrue(all.size() > 30,"Many campus locations match one letter.");
+	List<String> paged = new ArrayList<String>();
+	for (int offset=0; offset<all.size()+10; offset+=10){
+		paged.addAll(campusIndex.search("s",offset,10));
+	}
+	Assertions.assertEquals(all,paged,"Pages list every match once.");
+	Assertions.assertEquals(all.size(),new HashSet<String>(all).size(),"No match is listed twice.");
+   }
+
+    /**
+    * Confirm the hub label oracle finds shortest paths of the same cost as
+    * Dijkstra's algorithm, on the campus map and on a directed graph with
+    * unreachable pairs, and answers the same after its labels are saved and loaded.
+    * @return
+    */
+   @Test
+   public void testHubLabelOracle() throws IOException{
+	DijkstraGraph<Integer,Integer> lectureGraph = buildGraphFromLecture();
+	HubLabelOracle<Integer> lectureOracle = HubLabelOracle.build(lectureGraph);
+	assertSameShortestPaths(lectureGraph,lectureOracle::shortestPathCost,lectureOracle::shortestPathData,1);
+	DijkstraGraph<String,Double> campusGraph = DotGraphLoader.load("campus.dot");
+	HubLabelOracle<String> campusOracle = HubLabelOracle.build(campusGraph);
+	assertSameShortestPaths(campusGraph,campusOracle::shortestPathCost,campusOracle::shortestPathData,3);
+	//saved labels answer every query the same way
+	Path file = Files.createTempFile("labels",".bin");
+	try {
+		campusOracle.save(file);
+		HubLabelOracle<String> loadedOracle = HubLabelOracle.load(file);
+		Assertions.assertEquals(campusOracle.getLabelEntryCount(),loadedOracle.getLabelEntryCount(),"Every label entry is loaded.");
+		List<String> names = new ArrayList<String>(campusGraph.keySet());
+		for (int i=0; i<names.size(); i+=3){
+			for (String end : names){
+				Assertions.assertEquals(campusOracle.shortestPathCost(names.get(i),end),loadedOracle.shortestPathCost(names.get(i),end),"Loaded labels give the same cost.");
+				Assertions.assertEquals(campusOracle.shortestPathData(names.get(i),end),loadedOracle.shortestPathData(names.get(i),end),"Loaded labels give the same path.");
+			}
+		}
+		//files that are not label files are rejected
+		Files.write(file,new byte[] {1,2,3,4,5,6,7,8});
+		Assertions.assertThrows(IOException.class,() -> {
+					HubLabelOracle.load(file);
+				},"Other files are not loaded as labels."
+				);
+	} finally {
+		Files.delete(file);
+	}
+   }
+
+    /**
+    * Confirm tours of up to 8 stops cost the same as the best order found by brute
+    * force, and that larger tours visit every stop once from the first stop, with
+    * a cost equal to the edges along their route.
+    * @return
+    */
+   @Test
+   public void testTourPlanner() throws IOException{
+	DijkstraGraph<String,Double> campusGraph = DotGraphLoader.load("campus.dot");
+	TourPlanner<String> planner = new TourPlanner<String>(campusGraph);
+	List<String> names = new ArrayList<String>(campusGraph.keySet());
+	Random random = new Random(33);
+	for (int k=2; k<=8; k++){
+		for (boolean returnToStart : new boolean[] {false,true}){
+			List<String> stops = new ArrayList<String>(names);
+			Collections.shuffle(stops,random);
+			stops = stops.subList(0,k);
+			double[][] cost = new double[k][k];
+			for (int i=0; i<k; i++){
+				for (int j=0; j<k; j++){
+					cost[i][j] = campusGraph.shortestPathCost(stops.get(i),stops.get(j));
+				}
+			}
+			boolean[] visited = new boolean[k];
+			double expectedCost = bruteForceTourCost(cost,0,visited,k-1,returnToStart);
+			TourPlanner.Tour<String> tour = planner.planTour(stops,returnToStart);
+			Assertions.assertEquals(expectedCost,tour.getCost(),1e-9,"Tour of " + k + " stops has the cheapest order.");
+			Assertions.assertEquals(stops.get(0),tour.getStops().get(0),"Tour starts at the first stop.");
+		}
+	}
+	//larger tours are ordered heuristically
+	for (boolean returnToStart : new boolean[] {false,true}){
+		List<String> stops = new ArrayList<String>(names);
+		Collections.shuffle(stops,random);
+		stops = stops.subList(0,25);
+		TourPlanner.Tour<String> tour = planner.planTour(stops,returnToStart);
+		Assertions.assertEquals(stops.size(),tour.getStops().size(),"Tour visits as many stops as requested.");
+		Assertions.assertEquals(new HashSet<String>(stops),new HashSet<String>(tour.getStops()),"Tour visits every stop once.");
+		Assertions.assertEquals(stops.get(0),tour.getStops().get(0),"Tour starts at the first stop.");
+		List<String> path = tour.getPath();
+		Assertions.assertEquals(stops.get(0),path.get(0),"Route starts at the first stop.");
+		Assertions.assertEquals(returnToStart ? stops.get(0) : tour.getStops().get(stops.size()-1),path.get(path.size()-1),"Route ends at the last stop.");
+		Assertions.assertTrue(path.containsAll(stops),"Route passes every stop.");
+		double pathCost = 0.0;
+		for (int i=1; i<path.size(); i++){
+			pathCost += campusGraph.getEdge(path.get(i-1),path.get(i));
+		}
+		Assertions.assertEquals(pathCost,tour.getCost(),1e-9,"Tour cost is the cost of its route.");
+	}
+   }
+
+    /**
+    * Confirm a saved path cache loads back with every tree and answers queries
+    * like the cache that saved it, and that snapshots for another map or with a
+    * damaged body are deleted instead of loaded.
+    * @return
+    */
+   @Test
+   public void testPathCacheSnapshot() throws IOException{
+	DijkstraGraph<String,Double> campusGraph = DotGraphLoader.load("campus.dot");
+	List<String> names = new ArrayList<String>(campusGraph.keySet());
+	PathCache<String> savedCache = new PathCache<String>(campusGraph,8);
+	for (int i=0; i<names.size(); i+=40){
+		savedCache.shortestPathData(names.get(i),names.get(names.size()-1));
+	}
+	Assertions.assertEquals(4,savedCache.size(),"One tree is cached per start.");
+	Path file = Files.createTempFile("paths",".cache");
+	try {
+		savedCache.save(file,42L);
+		PathCache<String> loadedCache = new PathCache<String>(campusGraph,8);
+		Assertions.assertTrue(loadedCache.load(file,42L),"Snapshot for the same map is loaded.");
+		Assertions.assertEquals(4,loadedCache.size(),"Every saved tree is loaded.");
+		for (int i=0; i<names.size(); i+=40){
+			for (String end : names){
+				Assertions.assertEquals(campusGraph.shortestPathCost(names.get(i),end),loadedCache.shortestPathCost(names.get(i),end),1e-9,"Loaded tree gives the correct cost.");
+				Assertions.assertEquals(savedCache.shortestPathData(names.get(i),end),loadedCache.shortestPathData(names.get(i),end),"Loaded tree gives the same path.");
+			}
+		}
+		//a snapshot of another map is stale: it is deleted and nothing is loaded
+		savedCache.save(file,42L);
+		PathCache<String> otherMapCache = new PathCache<String>(campusGraph,8);
+		Assertions.assertFalse(otherMapCache.load(file,43L),"Snapshot for another map is not loaded.");
+		Assertions.assertFalse(Files.exists(file),"Stale snapshot is deleted.");
+		Assertions.assertEquals(0,otherMapCache.size(),"No trees are loaded from a stale snapshot.");
+		//so is a snapshot whose trees were cut short
+		savedCache.save(file,42L);
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file,Arrays.copyOf(bytes,bytes.length-12));
+		Assertions.assertFalse(new PathCache<String>(campusGraph,8).load(file,42L),"Truncated snapshot is not loaded.");
+		Assertions.assertFalse(Files.exists(file),"Truncated snapshot is deleted.");
+	} finally {
+		Files.deleteIfExists(file);
+	}
+   }
+
+    /**
+    * Confirm the path cache is saved when the command loop ends without the user
+    * choosing to quit, here because its input runs out mid-session.
+    * @return
+    */
+   @Test
+   public void testPathCacheSavedOnAbnormalExit() throws IOException{
+	DijkstraGraph<String,Double> campusGraph = DotGraphLoader.load("campus.dot");
+	List<String> names = new ArrayList<String>(campusGraph.keySet());
+	PathCache<String> pathCache = new PathCache<String>(campusGraph,8);
+	Path directory = Files.createTempDirectory("cache");
+	Path file = directory.resolve("campus.dot.cache");
+	InputStream stdin = System.in;
+	PrintStream stdout = System.out;
+	//one path query and an empty line, then the input ends before 'q'
+	System.setIn(new ByteArrayInputStream(("f\n" + names.get(0) + " -> " + names.get(names.size()-1) + "\n\n").getBytes(StandardCharsets.UTF_8)));
+	System.setOut(new PrintStream(new ByteArrayOutputStream(),true,"UTF-8"));
+	try {
+		Assertions.assertThrows(NoSuchElementException.class,() -> ShortestPathApp.runCommandLoop(campusGraph,
+			new LocationIndex(campusGraph.keySet()),pathCache,new ReentrantReadWriteLock(),file,42L,null),"Loop ends at the end of input.");
+		System.setOut(stdout);
+		Assertions.assertTrue(Files.exists(file),"Snapshot is saved without quitting.");
+		PathCache<String> loadedCache = new PathCache<String>(campusGraph,8);
+		Assertions.assertTrue(loadedCache.load(file,42L),"Saved snapshot is loaded by the next run.");
+		Assertions.assertEquals(1,loadedCache.size(),"The tree of the query is saved.");
+	} finally {
+		System.setIn(stdin);
+		System.setOut(stdout);
+		Files.deleteIfExists(file);
+		Files.delete(directory);
+	}
+   }
+
+    /**
+    * Confirm identical queries submitted at once share a single search, and that
+    * a query arriving when the queue is full fails its future instead of throwing.
+    * @return
+    */
+   @Test
+   public void testPathQueryService() throws Exception{
+	//a graph whose searches from 1 to 8 wait until released, counting every search
+	CountDownLatch searchStarted = new CountDownLatch(1);
+	CountDownLatch releaseSearch = new CountDownLatch(1);
+	AtomicInteger searches = new AtomicInteger();
+	DijkstraGraph<Integer,Integer> blockingGraph = new DijkstraGraph<Integer,Integer>(){
+		@Override
+		public PathResult<Integer> shortestPath(Integer start, Integer end){
+			searches.incrementAndGet();
+			if (start == 1 && end == 8){
+				searchStarted.countDown();
+				try {
+					releaseSearch.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return super.shortestPath(start,end);
+		}
+	};
+	for (int i=1; i<=8; i++){
+		blockingGraph.insertNode(i);
+	}
+	Integer[][] edgeArray = {{1,2,9},{1,6,14},{1,7,15},{2,3,23},{3,5,2},{3,8,19},{4,8,6},{4,3,6},
+		{5,8,16},{5,4,11},{6,3,18},{6,5,30},{6,7,5},{7,5,20},{7,8,44}};
+	addEdges(blockingGraph,edgeArray);
+	//one worker thread and room for one waiting query
+	PathQueryService<Integer> service = new PathQueryService<Integer>(blockingGraph,1,1);
+	try {
+		List<CompletableFuture<PathResult<Integer>>> identical = IntStream.range(0,8).parallel()
+			.mapToObj(i -> service.shortestPath(1,8)).collect(Collectors.toList());
+		Assertions.assertTrue(searchStarted.await(5,TimeUnit.SECONDS),"The shared search started.");
+		Assertions.assertEquals(7,(int) service.getCoalescedCount(),"Identical queries share the running search.");
+		//the queue holds one more query, and the next one is rejected through its future
+		CompletableFuture<PathResult<Integer>> queued = service.shortestPath(1,5);
+		CompletableFuture<PathResult<Integer>> rejected = service.shortestPath(2,8);
+		Assertions.assertEquals(1,service.getQueueDepth(),"One query waits in the queue.");
+		Assertions.assertTrue(rejected.isCompletedExceptionally(),"Query beyond the queue fails right away.");
+		Assertions.assertEquals(1,(int) service.getRejectedCount(),"Rejected query is counted.");
+		ExecutionException failure = Assertions.assertThrows(ExecutionException.class,() -> {
+					rejected.get();
+				},"Rejected query fails its future."
+				);
+		Assertions.assertTrue(failure.getCause() instanceof RejectedExecutionException,"Rejected query fails with RejectedExecutionException.");
+		//once released, every identical query gets the one search's result
+		releaseSearch.countDown();
+		for (CompletableFuture<PathResult<Integer>> future : identical){
+			Assertions.assertEquals(Arrays.asList(1,2,3,5,8),future.get(5,TimeUnit.SECONDS).getPath(),"Shared search finds the shortest path.");
+		}
+		Assertions.assertEquals(Arrays.asList(1,2,3,5),queued.get(5,TimeUnit.SECONDS).getPath(),"Queued query runs after the search.");
+		Assertions.assertEquals(2,searches.get(),"Only the shared and the queued query searched the graph.");
+		Assertions.assertEquals(0,service.getQueueDepth(),"Queue is empty once queries finish.");
+		Assertions.assertTrue(service.getAverageWaitMillis() >= 0.0,"Average wait is measured.");
+		//a later identical query starts a new search, since the earlier one has finished
+		service.shortestPath(1,8).get(5,TimeUnit.SECONDS);
+		Assertions.assertEquals(3,searches.get(),"Finished searches are not shared.");
+	} finally {
+		releaseSearch.countDown();
+		service.close();
+	}
+   }
+
+    /**
+    * Confirm an edit to a watched map file reaches the graph as one batch with a
+    * single version change, and that a malformed rewrite leaves the graph as it was.
+    * @return
+    */
+   @Test
+   public void testMapFileWatcher() throws Exception{
+	Path directory = Files.createTempDirectory("watched");
+	Path file = directory.resolve("map.dot");
+	Files.write(file,Arrays.asList("digraph campus {","\t\"A\" -> \"B\" [seconds=5.0];",
+		"\t\"B\" -> \"C\" [seconds=3.0];","\t\"C\" -> \"D\" [seconds=4.0];","}"));
+	DijkstraGraph<String,Double> graph = DotGraphLoader.load(file.toString());
+	MapFileWatcher watcher = new MapFileWatcher(file,graph,new ReentrantReadWriteLock());
+	try {
+		long versionBefore = graph.getVersion();
+		Assertions.assertEquals(0,watcher.reload(),"Reloading an unchanged file changes nothing.");
+		Assertions.assertEquals(versionBefore,graph.getVersion(),"Version is unchanged without changes.");
+		//reweight B-C, drop C-D and add D-E, all in one rewrite of the watched file
+		watcher.start();
+		int reloadsBefore = watcher.getReloadCount();
+		Files.write(file,Arrays.asList("digraph campus {","\t\"A\" -> \"B\" [seconds=5.0];",
+			"\t\"B\" -> \"C\" [seconds=1.0];","\t\"D\" -> \"E\" [seconds=2.0];","}"));
+		for (int wait=0; wait<100 && watcher.getReloadCount() == reloadsBefore; wait++){
+			Thread.sleep(100);
+		}
+		Assertions.assertEquals(reloadsBefore + 1,watcher.getReloadCount(),"Edit is reloaded once.");
+		Assertions.assertEquals(versionBefore + 1,graph.getVersion(),"Edit is applied as one batch.");
+		Assertions.assertEquals(1.0,graph.getEdge("C","B").doubleValue(),"Edge is reweighted in both directions.");
+		Assertions.assertFalse(graph.containsEdge("C","D") || graph.containsEdge("D","C"),"Dropped walkway is removed.");
+		Assertions.assertTrue(graph.containsNode("E") && graph.containsEdge("E","D"),"New walkway is added.");
+		Assertions.assertEquals(PathCache.hashFile(file),watcher.getMapHash(),"Map hash follows the file.");
+		//a rewrite with an unreadable time is not applied at all
+		long versionEdited = graph.getVersion();
+		long hashEdited = watcher.getMapHash();
+		Files.write(file,Arrays.asList("digraph campus {","\t\"A\" -> \"B\" [seconds=5.0];",
+			"\t\"B\" -> \"F\" [seconds=soon];","}"));
+		for (int wait=0; wait<100 && watcher.getLastError() == null; wait++){
+			Thread.sleep(100);
+		}
+		Assertions.assertTrue(watcher.getLastError() != null,"Malformed rewrite is reported.");
+		Assertions.assertEquals(reloadsBefore + 1,watcher.getReloadCount(),"Malformed rewrite is not reloaded.");
+		Assertions.assertEquals(versionEdited,graph.getVersion(),"Graph is untouched by the malformed rewrite.");
+		Assertions.assertTrue(graph.containsEdge("B","C") && graph.containsEdge("D","E") && !graph.containsNode("F"),"Graph keeps its edges.");
+		Assertions.assertEquals(hashEdited,watcher.getMapHash(),"Map hash is unchanged.");
+	} finally {
+		watcher.close();
+		Files.deleteIfExists(file);
+		Files.delete(directory);
+	}
+   }
+
+    /**
+    * Confirm batch mode answers each query line in input order, both through a shared
+    * search for a repeated start and a stopping search for a single-use start, and
+    * reports malformed lines, unknown locations and unreachable ends.
+    * @return
+    */
+   @Test
+   public void testBatchMode() throws IOException{
+	DijkstraGraph<String,Double> graph = new DijkstraGraph<String,Double>();
+	for (String node : new String[]{"A","B","C","D","E"}){
+		graph.insertNode(node);
+	}
+	graph.insertEdge("A","B",2.0);
+	graph.insertEdge("B","C",3.0);
+	graph.insertEdge("A","C",10.0);
+	graph.insertEdge("C","D",1.0);
+	graph.insertEdge("E","A",1.0);
+	String input = String.join("\n","A -> C","","garbage","D -> A","A -> Z","  ","A -> D","\t-> B","E -> D","A -> E","Z -> Y");
+	List<String> expected = Arrays.asList(
+		"OK\tA\tC\t5.0\tA -> B -> C",
+		"ERR\tE_PARSE\tgarbage",
+		"ERR\tE_NO_PATH\tD\tA",
+		"ERR\tE_UNKNOWN_LOCATION\tA\tZ",
+		"OK\tA\tD\t6.0\tA -> B -> C -> D",
+		"ERR\tE_PARSE\t -> B",
+		"OK\tE\tD\t7.0\tE -> A -> B -> C -> D",
+		"ERR\tE_NO_PATH\tA\tE",
+		"ERR\tE_UNKNOWN_LOCATION\tZ\tY");
+	for (boolean parallel : new boolean[]{false,true}){
+		StringWriter written = new StringWriter();
+		BufferedWriter output = new BufferedWriter(written);
+		ShortestPathApp.runBatch(graph,new BufferedReader(new StringReader(input)),output,parallel);
+		Assertions.assertEquals(expected,Arrays.asList(written.toString().split("\\R")),
+			"Batch results are in input order when parallel is " + parallel + ".");
+	}
+   }
+
 }
@@ -0,0 +1,346 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This DotGraphLoader class reads map files made of lines in the form
+ *     "start" -> "end" [seconds=time];
+ * using several threads. The file is memory-mapped and split into chunks that
+ * begin and end on line boundaries. Each chunk is parsed by its own thread into
+ * an edge buffer that refers to node names by chunk-local ids. The buffers are
+ * then merged in file order, so nodes are numbered by their first appearance in
+ * the file exactly as they would be by a single-threaded reader.
+ */
+public class DotGraphLoader {
+
+    // files smaller than this are parsed as a single chunk
+    static final long MIN_PARALLEL_BYTES = 1 << 20;
+    // no chunk is larger than this, so each fits within one mapped buffer
+    private static final long MAX_CHUNK_BYTES = 1 << 28;
+
+    private static final byte[] SECONDS = "[seconds=".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The edges of a parsed map file. Node ids are indexes into names, which
+     * lists every node in order of first appearance, and edge i connects
+     * names[start[i]] to names[end[i]] taking seconds[i].
+     */
+    public static class ParsedMap {
+        public final List<String> names;
+        public final int edgeCount;
+        public final int[] start;
+        public final int[] end;
+        public final double[] seconds;
+
+        ParsedMap(List<String> names, int edgeCount, int[] start, int[] end, double[] seconds) {
+            this.names = names;
+            this.edgeCount = edgeCount;
+            this.start = start;
+            this.end = end;
+            this.seconds = seconds;
+        }
+    }
+
+    /**
+     * Reads a map file into a new DijkstraGraph.
+     *
+     * @param filename the map file to read
+     * @return a Dijkstra graph that represents the map
+     * @throws IOException when there is trouble finding/reading file
+     */
+    public static DijkstraGraph<String, Double> load(String filename) throws IOException {
+        return load(filename, new DijkstraGraph<String, Double>());
+    }
+
+    /**
+     * Reads a map file into the provided graph. Every line describes a walkway
+     * that can be used in both directions, so an edge is inserted in each
+     * direction (or once, when the graph is an UndirectedDijkstraGraph). When a
+     * pair of nodes appears more than once, the first time it is listed
+     * determines its weight.
+     *
+     * @param filename the map file to read
+     * @param graph    the graph to insert the map's nodes and edges into
+     * @return the graph passed in
+     * @throws IOException when there is trouble finding/reading file
+     */
+    public static <G extends GraphADT<String, Double>> G load(String filename, G graph) throws IOException {
+        ParsedMap map = parse(Paths.get(filename));
+        for (String name : map.names)
+            graph.insertNode(name);
+        HashSet<Long> inserted = new HashSet<>(map.edgeCount * 4);
+        // an undirected graph stores both directions in the edge inserted first
+        boolean undirected = graph instanceof UndirectedDijkstraGraph;
+        for (int i = 0; i < map.edgeCount; i++) {
+            int start = map.start[i];
+            int end = map.end[i];
+            Double time = map.seconds[i];
+            if (inserted.add(pairKey(start, end)))
+                graph.insertEdge(map.names.get(start), map.names.get(end), time);
+            // insert the opposite direction too, because walkways are undirected
+            if (inserted.add(pairKey(end, start)) && !undirected)
+                graph.insertEdge(map.names.get(end), map.names.get(start), time);
+        }
+        return graph;
+    }
+
+    /**
+     * Parses a map file into its list of edges, using one thread per chunk.
+     *
+     * @param file the map file to read
+     * @return the nodes and edges listed in that file, in file order
+     * @throws IOException when there is trouble finding/reading file, or when
+     *                     a line's time is not a number
+     */
+    public static ParsedMap parse(Path file) throws IOException {
+        return parse(file, 0);
+    }
+
+    /**
+     * Parses a map file into its list of edges, split into a fixed number of
+     * chunks. The result does not depend on the number of chunks.
+     *
+     * @param file   the map file to read
+     * @param chunks the number of chunks to split the file into, or 0 to pick
+     *               one from the file size and the number of processors
+     * @return the nodes and edges listed in that file, in file order
+     * @throws IOException when there is trouble finding/reading file, or when
+     *                     a line's time is not a number
+     */
+    static ParsedMap parse(Path file, int chunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = chunkBounds(channel, size, chunks > 0 ? chunks : chunkCount(size));
+            chunks = bounds.length - 1;
+            List<Chunk> parsed = new ArrayList<>(chunks);
+            if (chunks == 1) {
+                parsed.add(parseChunk(file, channel, bounds[0], bounds[1]));
+            } else {
+                ExecutorService workers = Executors.newFixedThreadPool(
+                        Math.min(chunks, Runtime.getRuntime().availableProcessors()));
+                try {
+                    List<Future<Chunk>> futures = new ArrayList<>(chunks);
+                    for (int c = 0; c < chunks; c++) {
+                        long from = bounds[c];
+                        long to = bounds[c + 1];
+                        futures.add(workers.submit((Callable<Chunk>) () -> parseChunk(file, channel, from, to)));
+                    }
+                    for (Future<Chunk> future : futures)
+                        parsed.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while reading " + file, e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException)
+                        throw (IOException) e.getCause();
+                    throw new IOException("could not parse " + file, e.getCause());
+                } finally {
+                    workers.shutdown();
+                }
+            }
+            return merge(parsed);
+        }
+    }
+
+    /**
+     * Picks the number of chunks to split a file of the provided size into.
+     */
+    private static int chunkCount(long size) {
+        if (size < MIN_PARALLEL_BYTES)
+            return 1;
+        return (int) Math.max(Runtime.getRuntime().availableProcessors(),
+                (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+    }
+
+    /**
+     * Splits a file into chunks whose boundaries fall just after a newline.
+     *
+     * @return the offset of each chunk's first byte, followed by the file size
+     */
+    private static long[] chunkBounds(FileChannel channel, long size, int chunks) throws IOException {
+        // no chunk may be larger than one mapped buffer
+        chunks = (int) Math.max(chunks, (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+        long[] bounds = new long[chunks + 1];
+        bounds[chunks] = size;
+        ByteBuffer one = ByteBuffer.allocate(1);
+        for (int c = 1; c < chunks; c++) {
+            long position = Math.max(bounds[c - 1], size * c / chunks);
+            // move forward until the previous byte ends a line
+            while (position > 0 && position < size) {
+                one.clear();
+                channel.read(one, position - 1);
+                if (one.get(0) == '\n')
+                    break;
+                position++;
+            }
+            bounds[c] = position;
+        }
+        return bounds;
+    }
+
+    /**
+     * The edges parsed from one chunk, with node names numbered locally in
+     * their order of first appearance within the chunk.
+     */
+    private static class Chunk {
+        List<String> names = new ArrayList<>();
+        int edgeCount = 0;
+        int[] start = new int[64];
+        int[] end = new int[64];
+        double[] seconds = new double[64];
+    }
+
+    /**
+     * Parses the lines of one chunk of a file.
+     *
+     * @throws IOException when there is trouble reading the chunk, or when a
+     *                     line's time is not a number, naming the file and line
+     */
+    private static Chunk parseChunk(Path file, FileChannel channel, long from, long to) throws IOException {
+        Chunk chunk = new Chunk();
+        if (to <= from)
+            return chunk;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        HashMap<String, Integer> localIds = new HashMap<>();
+        byte[] scratch = new byte[256];
+        int limit = buffer.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n')
+                lineEnd++;
+            // lines without two quoted names and a time (header, footer) are skipped
+            int q1 = indexOf(buffer, (byte) '"', lineStart, lineEnd);
+            int q2 = q1 < 0 ? -1 : indexOf(buffer, (byte) '"', q1 + 1, lineEnd);
+            int q3 = q2 < 0 ? -1 : indexOf(buffer, (byte) '"', q2 + 1, lineEnd);
+            int q4 = q3 < 0 ? -1 : indexOf(buffer, (byte) '"', q3 + 1, lineEnd);
+            int time = q4 < 0 ? -1 : indexOf(buffer, SECONDS, q4 + 1, lineEnd);
+            int timeEnd = time < 0 ? -1 : indexOf(buffer, (byte) ']', time + SECONDS.length, lineEnd);
+            if (timeEnd >= 0) {
+                if (chunk.edgeCount == chunk.start.length) {
+                    chunk.start = Arrays.copyOf(chunk.start, chunk.edgeCount * 2);
+                    chunk.end = Arrays.copyOf(chunk.end, chunk.edgeCount * 2);
+                    chunk.seconds = Arrays.copyOf(chunk.seconds, chunk.edgeCount * 2);
+                }
+                String start = text(buffer, q1 + 1, q2, scratch);
+                String end = text(buffer, q3 + 1, q4, scratch);
+                chunk.start[chunk.edgeCount] = intern(start, localIds, chunk.names);
+                chunk.end[chunk.edgeCount] = intern(end, localIds, chunk.names);
+                String seconds = text(buffer, time + SECONDS.length, timeEnd, scratch);
+                try {
+                    chunk.seconds[chunk.edgeCount] = Double.parseDouble(seconds);
+                } catch (NumberFormatException e) {
+                    throw new IOException("could not parse " + file + " line " + lineNumber(channel, from + lineStart)
+                            + ": \"" + seconds + "\" is not a number of seconds", e);
+                }
+                chunk.edgeCount++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    /**
+     * Counts the lines of a file up to a position, which is only needed to
+     * report an error, so chunks need not know where their lines start.
+     *
+     * @return the 1-based number of the line containing position
+     */
+    private static long lineNumber(FileChannel channel, long position) throws IOException {
+        long line = 1;
+        ByteBuffer block = ByteBuffer.allocate(1 << 16);
+        for (long offset = 0; offset < position;) {
+            block.clear();
+            block.limit((int) Math.min(block.capacity(), position - offset));
+            int read = channel.read(block, offset);
+            if (read <= 0)
+                break;
+            for (int i = 0; i < read; i++)
+                if (block.get(i) == '\n')
+                    line++;
+            offset += read;
+        }
+        return line;
+    }
+
+    /**
+     * Merges chunks in file order, renumbering their local node ids so that
+     * nodes are numbered by first appearance across the whole file.
+     */
+    private static ParsedMap merge(List<Chunk> chunks) {
+        List<String> names = new ArrayList<>();
+        HashMap<String, Integer> ids = new HashMap<>();
+        int edgeCount = 0;
+        for (Chunk chunk : chunks)
+            edgeCount += chunk.edgeCount;
+        int[] start = new int[edgeCount];
+        int[] end = new int[edgeCount];
+        double[] seconds = new double[edgeCount];
+        int next = 0;
+        for (Chunk chunk : chunks) {
+            int[] globalIds = new int[chunk.names.size()];
+            for (int local = 0; local < globalIds.length; local++)
+                globalIds[local] = intern(chunk.names.get(local), ids, names);
+            for (int i = 0; i < chunk.edgeCount; i++, next++) {
+                start[next] = globalIds[chunk.start[i]];
+                end[next] = globalIds[chunk.end[i]];
+                seconds[next] = chunk.seconds[i];
+            }
+        }
+        return new ParsedMap(names, edgeCount, start, end, seconds);
+    }
+
+    private static int intern(String name, HashMap<String, Integer> ids, List<String> names) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    private static long pairKey(int start, int end) {
+        return ((long) start << 32) | (end & 0xffffffffL);
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, byte target, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (buffer.get(i) == target)
+                return i;
+        return -1;
+    }
+
+    private static int indexOf(MappedByteBuffer buffer, byte[] target, int from, int to) {
+        search:
+        for (int i = from; i + target.length <= to; i++) {
+            for (int j = 0; j < target.length; j++)
+                if (buffer.get(i + j) != target[j])
+                    continue search;
+            return i;
+        }
+        return -1;
+    }
+
+    private static String text(MappedByteBuffer buffer, int from, int to, byte[] scratch) {
+        int length = to - from;
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(from, bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -124,6 +124,64 @@ public interface GraphADT<NodeType, EdgeType extends Number> {
      */
     public double shortestPathCost(NodeType start, NodeType end);
 
+    /**
+     * Receives the edges of a node one at a time during a traversal, as the
+     * id of the node at the other end of each edge and the edge's weight.
+     */
+    @FunctionalInterface
+    public interface EdgeVisitor {
+        public void visit(int neighborId, double weight);
+    }
+
+    /**
+     * Return the id of the node containing the provided data. Every node has
+     * an id between 0 and nodeIdBound(), which stays the same until the node
+     * is removed.
+     *
+     * @param data the node contents to look for
+     * @return the id of that node
+     * @throws NoSuchElementException if data is not found in the graph
+     */
+    public int nodeId(NodeType data);
+
+    /**
+     * Return the data stored in the node with the provided id.
+     *
+     * @param id the id of the node
+     * @return the data stored in that node
+     * @throws NoSuchElementException if no node in the graph has that id
+     */
+    public NodeType nodeData(int id);
+
+    /**
+     * Return a bound on node ids: every node's id is lower than this bound.
+     * Ids of removed nodes are not reused, so some ids below the bound may
+     * belong to no node.
+     *
+     * @return one more than the highest id given to a node
+     */
+    public int nodeIdBound();
+
+    /**
+     * Pass every edge leaving a node to the provided visitor, without
+     * creating a list of those edges.
+     *
+     * @param id      the id of the node whose edges are visited
+     * @param visitor receives the id of each edge's successor and its weight
+     * @throws NoSuchElementException if no node in the graph has that id
+     */
+    public void forEachOutEdge(int id, EdgeVisitor visitor);
+
+    /**
+     * Pass every edge entering a node to the provided visitor, without
+     * creating a list of those edges.
+     *
+     * @param id      the id of the node whose edges are visited
+     * @param visitor receives the id of each edge's predecessor and its weight
+     * @throws NoSuchElementException if no node in the graph has that id
+     */
+    public void forEachInEdge(int id, EdgeVisitor visitor);
+
 /*_kcole9_*/
     /**
      * Returns a list of all node data (keys) in the graph (map)
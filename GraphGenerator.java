@@ -0,0 +1,204 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * This GraphGenerator class writes synthetic maps in the same format as
+ * campus.dot, one walkway per line in the form
+ *
+ *   "Node 12" -> "Node 13" [seconds=61.4];
+ *
+ * so that they can be loaded like the campus map at any size. Maps are
+ * generated from a seed, so the same seed always gives the same file. Three
+ * kinds of map can be generated:
+ *
+ * - GRID: a square grid where every node connects to its four neighbours
+ * - GEOMETRIC: nodes scattered at random, each connected to all nodes within
+ *   a radius chosen for an average of about six neighbours
+ * - ROAD: a jittered grid with about a quarter of its streets missing, a few
+ *   diagonal shortcuts, and faster arterial streets every few blocks, which
+ *   gives the long chains and uneven weights of real road networks
+ *
+ * Usage: java GraphGenerator GRID|GEOMETRIC|ROAD nodes seed output.dot
+ */
+public class GraphGenerator {
+
+    /**
+     * The kinds of map that can be generated.
+     */
+    public enum Type {
+        GRID, GEOMETRIC, ROAD
+    }
+
+    // seconds needed to walk between neighbouring grid nodes
+    private static final double BLOCK_SECONDS = 60.0;
+    // average number of neighbours of a node in a geometric map
+    private static final double GEOMETRIC_DEGREE = 6.0;
+    // share of the grid's streets kept in a road map
+    private static final double ROAD_KEEP = 0.75;
+    // share of a road map's blocks crossed by a diagonal shortcut
+    private static final double ROAD_DIAGONAL = 0.05;
+    // every this many rows and columns, a road map has a faster arterial street
+    private static final int ARTERIAL_SPACING = 16;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: java GraphGenerator GRID|GEOMETRIC|ROAD nodes seed output.dot");
+            System.exit(1);
+        }
+        long edges = write(Type.valueOf(args[0].toUpperCase(Locale.ROOT)), Integer.parseInt(args[1]),
+                Long.parseLong(args[2]), Paths.get(args[3]));
+        System.out.println("Wrote " + edges + " walkways to " + args[3]);
+    }
+
+    /**
+     * Writes a generated map to a file.
+     *
+     * @param type  the kind of map to generate
+     * @param nodes the number of nodes in the map
+     * @param seed  the seed of the random choices made while generating
+     * @param file  the file to write the map to
+     * @return the number of walkway lines written
+     * @throws IOException when there is trouble writing the file
+     */
+    public static long write(Type type, int nodes, long seed, Path file) throws IOException {
+        if (nodes < 2)
+            throw new IllegalArgumentException("a map needs at least two nodes");
+        try (BufferedWriter output = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            output.write("digraph campus {\n");
+            Random random = new Random(seed);
+            long edges;
+            switch (type) {
+            case GRID:
+                edges = writeGrid(nodes, random, output);
+                break;
+            case GEOMETRIC:
+                edges = writeGeometric(nodes, random, output);
+                break;
+            default:
+                edges = writeRoad(nodes, random, output);
+                break;
+            }
+            output.write("}\n");
+            return edges;
+        }
+    }
+
+    private static long writeGrid(int nodes, Random random, BufferedWriter output) throws IOException {
+        int side = (int) Math.ceil(Math.sqrt(nodes));
+        long edges = 0;
+        for (int v = 0; v < nodes; v++) {
+            // each street gets up to ten percent slower or faster than a block
+            if (v % side + 1 < side && v + 1 < nodes) {
+                writeEdge(v, v + 1, BLOCK_SECONDS * (0.9 + 0.2 * random.nextDouble()), output);
+                edges++;
+            }
+            if (v + side < nodes) {
+                writeEdge(v, v + side, BLOCK_SECONDS * (0.9 + 0.2 * random.nextDouble()), output);
+                edges++;
+            }
+        }
+        return edges;
+    }
+
+    private static long writeGeometric(int nodes, Random random, BufferedWriter output) throws IOException {
+        // scatter the nodes over a square with about one node per block
+        double side = Math.sqrt(nodes) * BLOCK_SECONDS;
+        double radius = side * Math.sqrt(GEOMETRIC_DEGREE / (Math.PI * nodes));
+        double[] x = new double[nodes];
+        double[] y = new double[nodes];
+        for (int v = 0; v < nodes; v++) {
+            x[v] = random.nextDouble() * side;
+            y[v] = random.nextDouble() * side;
+        }
+        // sort the nodes into cells of the radius' size, so only nodes in the
+        // same and neighbouring cells need to be compared
+        int cells = Math.max(1, (int) (side / radius));
+        int[] cellStart = new int[cells * cells + 1];
+        int[] cellOf = new int[nodes];
+        for (int v = 0; v < nodes; v++) {
+            int cx = Math.min(cells - 1, (int) (x[v] / side * cells));
+            int cy = Math.min(cells - 1, (int) (y[v] / side * cells));
+            cellOf[v] = cy * cells + cx;
+            cellStart[cellOf[v] + 1]++;
+        }
+        for (int c = 0; c < cells * cells; c++)
+            cellStart[c + 1] += cellStart[c];
+        int[] byCell = new int[nodes];
+        int[] fill = new int[cells * cells];
+        for (int v = 0; v < nodes; v++)
+            byCell[cellStart[cellOf[v]] + fill[cellOf[v]]++] = v;
+        long edges = 0;
+        for (int v = 0; v < nodes; v++) {
+            int cx = cellOf[v] % cells;
+            int cy = cellOf[v] / cells;
+            for (int ny = Math.max(0, cy - 1); ny <= Math.min(cells - 1, cy + 1); ny++) {
+                for (int nx = Math.max(0, cx - 1); nx <= Math.min(cells - 1, cx + 1); nx++) {
+                    int c = ny * cells + nx;
+                    for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                        int u = byCell[i];
+                        // write each pair once, from its lower numbered node
+                        if (u <= v)
+                            continue;
+                        double distance = Math.hypot(x[u] - x[v], y[u] - y[v]);
+                        if (distance <= radius) {
+                            writeEdge(v, u, distance, output);
+                            edges++;
+                        }
+                    }
+                }
+            }
+        }
+        return edges;
+    }
+
+    private static long writeRoad(int nodes, Random random, BufferedWriter output) throws IOException {
+        int side = (int) Math.ceil(Math.sqrt(nodes));
+        // move every intersection up to a third of a block from its grid point
+        double[] x = new double[nodes];
+        double[] y = new double[nodes];
+        for (int v = 0; v < nodes; v++) {
+            x[v] = (v % side + (random.nextDouble() - 0.5) * 0.66) * BLOCK_SECONDS;
+            y[v] = (v / side + (random.nextDouble() - 0.5) * 0.66) * BLOCK_SECONDS;
+        }
+        long edges = 0;
+        for (int v = 0; v < nodes; v++) {
+            int column = v % side;
+            int row = v / side;
+            boolean right = column + 1 < side && v + 1 < nodes;
+            boolean down = v + side < nodes;
+            // arterial streets are never missing and take half the time
+            if (right && (row % ARTERIAL_SPACING == 0 || random.nextDouble() < ROAD_KEEP)) {
+                double speed = row % ARTERIAL_SPACING == 0 ? 0.5 : 1.0;
+                writeEdge(v, v + 1, speed * Math.hypot(x[v + 1] - x[v], y[v + 1] - y[v]), output);
+                edges++;
+            }
+            if (down && (column % ARTERIAL_SPACING == 0 || random.nextDouble() < ROAD_KEEP)) {
+                double speed = column % ARTERIAL_SPACING == 0 ? 0.5 : 1.0;
+                writeEdge(v, v + side, speed * Math.hypot(x[v + side] - x[v], y[v + side] - y[v]), output);
+                edges++;
+            }
+            if (right && v + side + 1 < nodes && random.nextDouble() < ROAD_DIAGONAL) {
+                writeEdge(v, v + side + 1, Math.hypot(x[v + side + 1] - x[v], y[v + side + 1] - y[v]), output);
+                edges++;
+            }
+        }
+        return edges;
+    }
+
+    private static void writeEdge(int from, int to, double seconds, BufferedWriter output) throws IOException {
+        output.write("\t\"Node ");
+        output.write(Integer.toString(from));
+        output.write("\" -> \"Node ");
+        output.write(Integer.toString(to));
+        output.write("\" [seconds=");
+        // one decimal place, like the campus map, but never zero
+        output.write(Double.toString(Math.max(0.1, Math.round(seconds * 10.0) / 10.0)));
+        output.write("];\n");
+    }
+}
@@ -0,0 +1,451 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This HubLabelOracle class answers shortest path queries from a 2-hop hub
+ * labeling built with pruned landmark labeling. Every node v has an out-label,
+ * a list of hubs h with the cost from v to h, and an in-label, a list of hubs
+ * h with the cost from h to v. The labels are built so that every shortest
+ * path from s to t passes through a hub shared by the out-label of s and the
+ * in-label of t, which makes the cost of that path the smallest sum over their
+ * shared hubs. Labels are sorted by hub, so a query is a linear merge of two
+ * short arrays and does not depend on the length of the path.
+ *
+ * Each label entry also stores the neighbor of its node along the path to (or
+ * from) its hub, which lets shortestPathData rebuild a path one hop at a time.
+ */
+public class HubLabelOracle<NodeType> {
+
+    private static final int MAGIC = 0x48554231; // "HUB1"
+    private static final int NONE = -1;
+    // the first hubs are processed one at a time, because they prune the most
+    private static final int SEQUENTIAL_HUBS = 16;
+
+    private final List<NodeType> dataById;
+    private final HashMap<NodeType, Integer> ids = new HashMap<>();
+    // rankToNode[r] is the node used as the r-th hub
+    private final int[] rankToNode;
+    // the label of node v is stored at start[v] .. start[v+1]-1 of the
+    // hub (rank), cost and parent arrays
+    private final int[] outStart;
+    private final int[] outHub;
+    private final double[] outCost;
+    private final int[] outParent;
+    private final int[] inStart;
+    private final int[] inHub;
+    private final double[] inCost;
+    private final int[] inParent;
+
+    private HubLabelOracle(List<NodeType> dataById, int[] rankToNode, Labels out, Labels in) {
+        this(dataById, rankToNode, out.start, out.hub, out.cost, out.parent,
+                in.start, in.hub, in.cost, in.parent);
+    }
+
+    private HubLabelOracle(List<NodeType> dataById, int[] rankToNode,
+            int[] outStart, int[] outHub, double[] outCost, int[] outParent,
+            int[] inStart, int[] inHub, double[] inCost, int[] inParent) {
+        this.dataById = dataById;
+        for (int id = 0; id < dataById.size(); id++)
+            ids.put(dataById.get(id), id);
+        this.rankToNode = rankToNode;
+        this.outStart = outStart;
+        this.outHub = outHub;
+        this.outCost = outCost;
+        this.outParent = outParent;
+        this.inStart = inStart;
+        this.inHub = inHub;
+        this.inCost = inCost;
+        this.inParent = inParent;
+    }
+
+    /**
+     * Builds the labels for a graph using the common fork-join pool.
+     *
+     * @param graph the graph to label
+     * @return an oracle answering queries over that graph
+     */
+    public static <NodeType, EdgeType extends Number> HubLabelOracle<NodeType> build(
+            DijkstraGraph<NodeType, EdgeType> graph) {
+        return build(CsrGraph.of(graph), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds the labels for a graph. Nodes are used as hubs in decreasing order
+     * of degree. After the first few hubs, hubs are processed in batches whose
+     * searches run in parallel and are pruned only by the labels of earlier
+     * batches, which keeps the labels correct at the cost of a little extra size.
+     *
+     * @param graph the graph to label
+     * @param pool  the workers that run the searches of each batch
+     * @return an oracle answering queries over that graph
+     */
+    public static <NodeType> HubLabelOracle<NodeType> build(CsrGraph<NodeType> graph, ForkJoinPool pool) {
+        int n = graph.getNodeCount();
+        Integer[] order = new Integer[n];
+        for (int v = 0; v < n; v++)
+            order[v] = v;
+        Arrays.sort(order, (a, b) -> {
+            int degreeA = graph.endOut(a) - graph.firstOut(a) + graph.endIn(a) - graph.firstIn(a);
+            int degreeB = graph.endOut(b) - graph.firstOut(b) + graph.endIn(b) - graph.firstIn(b);
+            return degreeA != degreeB ? Integer.compare(degreeB, degreeA) : Integer.compare(a, b);
+        });
+        int[] rankToNode = new int[n];
+        for (int r = 0; r < n; r++)
+            rankToNode[r] = order[r];
+
+        LabelBuilder[] out = new LabelBuilder[n];
+        LabelBuilder[] in = new LabelBuilder[n];
+        for (int v = 0; v < n; v++) {
+            out[v] = new LabelBuilder();
+            in[v] = new LabelBuilder();
+        }
+        ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(n));
+        int batch = Math.max(1, pool.getParallelism() * 4);
+        for (int first = 0; first < n;) {
+            int size = first < SEQUENTIAL_HUBS ? 1 : Math.min(batch, n - first);
+            List<ForkJoinTask<LabelBuilder>> searches = new ArrayList<>(2 * size);
+            for (int r = first; r < first + size; r++) {
+                int rank = r;
+                searches.add(pool.submit(() -> prunedSearch(graph, rankToNode[rank], true, out, in, scratch.get())));
+                searches.add(pool.submit(() -> prunedSearch(graph, rankToNode[rank], false, out, in, scratch.get())));
+            }
+            // commit the batch in rank order once every search has finished,
+            // since the searches still running read the labels being extended
+            for (ForkJoinTask<LabelBuilder> search : searches)
+                search.join();
+            for (int i = 0; i < searches.size(); i++) {
+                LabelBuilder found = searches.get(i).join();
+                int rank = first + i / 2;
+                LabelBuilder[] labels = i % 2 == 0 ? in : out;
+                for (int k = 0; k < found.size; k++)
+                    labels[found.hub[k]].add(rank, found.cost[k], found.parent[k]);
+            }
+            first += size;
+        }
+        List<NodeType> dataById = new ArrayList<>(n);
+        for (int v = 0; v < n; v++)
+            dataById.add(graph.data(v));
+        return new HubLabelOracle<>(dataById, rankToNode, new Labels(out), new Labels(in));
+    }
+
+    /**
+     * Runs a Dijkstra search from a hub, forward to fill in-labels or backward
+     * to fill out-labels, that stops expanding any node whose cost through the
+     * hub is no better than what the existing labels already answer.
+     *
+     * @return the entries found, with the labelled node stored in the hub field
+     */
+    private static LabelBuilder prunedSearch(CsrGraph<?> graph, int hub, boolean forward,
+            LabelBuilder[] out, LabelBuilder[] in, Scratch scratch) {
+        LabelBuilder found = new LabelBuilder();
+        // spread the hub's own label into an array indexed by hub rank
+        LabelBuilder hubLabel = forward ? out[hub] : in[hub];
+        for (int k = 0; k < hubLabel.size; k++)
+            scratch.hubCost[hubLabel.hub[k]] = hubLabel.cost[k];
+        NodeHeap queue = scratch.queue;
+        queue.clear();
+        scratch.visit(hub, 0.0, NONE);
+        queue.add(hub, 0.0);
+        while (!queue.isEmpty()) {
+            int v = queue.peekNode();
+            double cost = queue.peekCost();
+            queue.remove();
+            if (cost > scratch.cost[v])
+                continue;
+            // prune when an earlier hub already covers this pair as cheaply
+            LabelBuilder label = forward ? in[v] : out[v];
+            boolean covered = false;
+            for (int k = 0; k < label.size && !covered; k++)
+                covered = scratch.hubCost[label.hub[k]] + label.cost[k] <= cost;
+            if (covered)
+                continue;
+            found.add(v, cost, scratch.parent[v]);
+            int begin = forward ? graph.firstOut(v) : graph.firstIn(v);
+            int end = forward ? graph.endOut(v) : graph.endIn(v);
+            for (int e = begin; e < end; e++) {
+                int w = forward ? graph.outTarget(e) : graph.inSource(e);
+                double wCost = cost + (forward ? graph.outWeight(e) : graph.inWeight(e));
+                if (wCost < scratch.cost[w]) {
+                    scratch.visit(w, wCost, v);
+                    queue.add(w, wCost);
+                }
+            }
+        }
+        for (int k = 0; k < hubLabel.size; k++)
+            scratch.hubCost[hubLabel.hub[k]] = Double.POSITIVE_INFINITY;
+        scratch.reset();
+        return found;
+    }
+
+    /**
+     * Returns the cost of the shortest path from the node containing the start
+     * data to the node containing the end data.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return the cost of the shortest path between these nodes
+     * @throws NoSuchElementException when no path from start to end exists
+     *                                or when either node is not labelled
+     */
+    public double shortestPathCost(NodeType start, NodeType end) {
+        int s = id(start);
+        int t = id(end);
+        int[] best = bestHub(s, t);
+        if (best == null)
+            throw new NoSuchElementException("no path exists between start and end nodes");
+        return outCost[best[0]] + inCost[best[1]];
+    }
+
+    /**
+     * Returns the list of data values from nodes along the shortest path from
+     * the node containing the start data to the node containing the end data.
+     * The path is rebuilt from both ends: each step follows the stored parent
+     * of whichever label entry the best hub between the current ends belongs to.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return list of data item from node along this shortest path
+     * @throws NoSuchElementException when no path from start to end exists
+     *                                or when either node is not labelled
+     */
+    public List<NodeType> shortestPathData(NodeType start, NodeType end) {
+        int front = id(start);
+        int back = id(end);
+        // head holds the nodes from start through front, tail the nodes after back
+        LinkedList<NodeType> head = new LinkedList<>();
+        LinkedList<NodeType> tail = new LinkedList<>();
+        head.add(start);
+        for (int steps = 0; front != back; steps++) {
+            int[] best = bestHub(front, back);
+            if (best == null || steps > 2 * dataById.size())
+                throw new NoSuchElementException("no path exists between start and end nodes");
+            if (rankToNode[outHub[best[0]]] == front) {
+                // the front is the hub: step the back end towards it
+                tail.addFirst(dataById.get(back));
+                back = inParent[best[1]];
+            } else {
+                front = outParent[best[0]];
+                head.add(dataById.get(front));
+            }
+        }
+        // head now runs from start to the meeting node, and tail from there to end
+        head.addAll(tail);
+        return head;
+    }
+
+    /**
+     * Returns the number of label entries over all nodes, in both directions.
+     *
+     * @return the total size of the labels
+     */
+    public long getLabelEntryCount() {
+        return (long) outHub.length + inHub.length;
+    }
+
+    /**
+     * Writes the labels to a file, so they can be loaded instead of rebuilt.
+     *
+     * @param file the file to write
+     * @throws IOException when the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(dataById.size());
+            for (NodeType data : dataById)
+                output.writeUTF(data.toString());
+            writeInts(output, rankToNode);
+            writeInts(output, outStart);
+            writeInts(output, outHub);
+            writeDoubles(output, outCost);
+            writeInts(output, outParent);
+            writeInts(output, inStart);
+            writeInts(output, inHub);
+            writeDoubles(output, inCost);
+            writeInts(output, inParent);
+        }
+    }
+
+    /**
+     * Reads labels written by save. Node data is restored as strings.
+     *
+     * @param file the file to read
+     * @return an oracle answering queries with the saved labels
+     * @throws IOException when the file cannot be read or is not a label file
+     */
+    public static HubLabelOracle<String> load(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC)
+                throw new IOException(file + " is not a hub label file");
+            int n = input.readInt();
+            List<String> dataById = new ArrayList<>(n);
+            for (int v = 0; v < n; v++)
+                dataById.add(input.readUTF());
+            return new HubLabelOracle<>(dataById, readInts(input),
+                    readInts(input), readInts(input), readDoubles(input), readInts(input),
+                    readInts(input), readInts(input), readDoubles(input), readInts(input));
+        }
+    }
+
+    /**
+     * Merges the out-label of s with the in-label of t.
+     *
+     * @return the indexes of the out and in entries of the best shared hub,
+     *         or null when the labels share no hub
+     */
+    private int[] bestHub(int s, int t) {
+        int i = outStart[s];
+        int j = inStart[t];
+        int iEnd = outStart[s + 1];
+        int jEnd = inStart[t + 1];
+        double best = Double.POSITIVE_INFINITY;
+        int bestI = NONE;
+        int bestJ = NONE;
+        while (i < iEnd && j < jEnd) {
+            if (outHub[i] < inHub[j]) {
+                i++;
+            } else if (outHub[i] > inHub[j]) {
+                j++;
+            } else {
+                double cost = outCost[i] + inCost[j];
+                if (cost < best) {
+                    best = cost;
+                    bestI = i;
+                    bestJ = j;
+                }
+                i++;
+                j++;
+            }
+        }
+        return bestI == NONE ? null : new int[] { bestI, bestJ };
+    }
+
+    private int id(NodeType data) {
+        Integer id = ids.get(data);
+        if (id == null)
+            throw new NoSuchElementException("specified start or end node not present in the graph");
+        return id;
+    }
+
+    private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+        output.writeInt(values.length);
+        for (int value : values)
+            output.writeInt(value);
+    }
+
+    private static void writeDoubles(DataOutputStream output, double[] values) throws IOException {
+        output.writeInt(values.length);
+        for (double value : values)
+            output.writeDouble(value);
+    }
+
+    private static int[] readInts(DataInputStream input) throws IOException {
+        int[] values = new int[input.readInt()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = input.readInt();
+        return values;
+    }
+
+    private static double[] readDoubles(DataInputStream input) throws IOException {
+        double[] values = new double[input.readInt()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = input.readDouble();
+        return values;
+    }
+
+    /**
+     * A growable label (or list of search results) held in primitive arrays.
+     */
+    private static class LabelBuilder {
+        int[] hub = new int[4];
+        double[] cost = new double[4];
+        int[] parent = new int[4];
+        int size = 0;
+
+        void add(int hubValue, double costValue, int parentValue) {
+            if (size == hub.length) {
+                hub = Arrays.copyOf(hub, size * 2);
+                cost = Arrays.copyOf(cost, size * 2);
+                parent = Arrays.copyOf(parent, size * 2);
+            }
+            hub[size] = hubValue;
+            cost[size] = costValue;
+            parent[size] = parentValue;
+            size++;
+        }
+    }
+
+    /**
+     * Labels of every node frozen into flat arrays.
+     */
+    private static class Labels {
+        final int[] start;
+        final int[] hub;
+        final double[] cost;
+        final int[] parent;
+
+        Labels(LabelBuilder[] labels) {
+            start = new int[labels.length + 1];
+            for (int v = 0; v < labels.length; v++)
+                start[v + 1] = start[v] + labels[v].size;
+            hub = new int[start[labels.length]];
+            cost = new double[hub.length];
+            parent = new int[hub.length];
+            for (int v = 0; v < labels.length; v++) {
+                System.arraycopy(labels[v].hub, 0, hub, start[v], labels[v].size);
+                System.arraycopy(labels[v].cost, 0, cost, start[v], labels[v].size);
+                System.arraycopy(labels[v].parent, 0, parent, start[v], labels[v].size);
+            }
+        }
+    }
+
+    /**
+     * Per-thread search arrays, reset after every search by clearing only the
+     * nodes that search touched.
+     */
+    private static class Scratch {
+        final double[] cost;
+        final int[] parent;
+        final double[] hubCost;
+        final NodeHeap queue = new NodeHeap(64);
+        int[] touched = new int[64];
+        int touchedCount = 0;
+
+        Scratch(int n) {
+            cost = new double[n];
+            parent = new int[n];
+            hubCost = new double[n];
+            Arrays.fill(cost, Double.POSITIVE_INFINITY);
+            Arrays.fill(hubCost, Double.POSITIVE_INFINITY);
+        }
+
+        void visit(int v, double vCost, int vParent) {
+            if (cost[v] == Double.POSITIVE_INFINITY) {
+                if (touchedCount == touched.length)
+                    touched = Arrays.copyOf(touched, touchedCount * 2);
+                touched[touchedCount++] = v;
+            }
+            cost[v] = vCost;
+            parent[v] = vParent;
+        }
+
+        void reset() {
+            for (int k = 0; k < touchedCount; k++)
+                cost[touched[k]] = Double.POSITIVE_INFINITY;
+            touchedCount = 0;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This LocationIndex class answers prefix and typo-tolerant lookups over a
+ * fixed collection of location names. It is built once, after the map has been
+ * loaded, from two structures:
+ *
+ * - two sorted arrays: one of the lower-cased names, and one of the rest of
+ *   each lower-cased name starting at each of its later words, so binary
+ *   search finds both "sci" -> "Science Hall" and "hall" -> "Science Hall"
+ * - a trigram index from every three-letter sequence to the names containing
+ *   it, used to find candidates for misspelled queries, which are then ranked
+ *   by edit distance
+ *
+ * Results are ranked: names that start with the query come first, then names
+ * with a word that starts with the query, then close misspellings. Prefix
+ * matches are listed in the order of their sorted arrays, so a page of them is
+ * read straight from those arrays without collecting every match first.
+ */
+public class LocationIndex {
+
+    // the most misspelled candidates that are checked with edit distance
+    private static final int MAX_FUZZY_CANDIDATES = 200;
+
+    private final String[] names;
+    // the lower-cased form of every name
+    private final String[] normalized;
+    // nameKeys[i] is a lower-cased name, and nameIds[i] the index of that name
+    private final String[] nameKeys;
+    private final int[] nameIds;
+    // wordKeys[i] is a lower-cased name suffix starting at a later word, and
+    // wordNames[i] / wordOffsets[i] hold the index of its name and word offset
+    private final String[] wordKeys;
+    private final int[] wordNames;
+    private final int[] wordOffsets;
+    private final HashMap<String, int[]> trigrams = new HashMap<>();
+
+    /**
+     * Builds an index over the provided location names.
+     *
+     * @param locations the names to index
+     */
+    public LocationIndex(Collection<String> locations) {
+        this.names = locations.toArray(new String[0]);
+        Arrays.sort(names);
+        this.normalized = new String[names.length];
+        // collect one key per later word start of every name
+        List<Object[]> entries = new ArrayList<>();
+        HashMap<String, List<Integer>> grams = new HashMap<>();
+        for (int n = 0; n < names.length; n++) {
+            String key = normalize(names[n]);
+            normalized[n] = key;
+            for (int i = 1; i < key.length(); i++)
+                if (key.charAt(i - 1) == ' ')
+                    entries.add(new Object[] { key.substring(i), n, i });
+            String padded = " " + key + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                List<Integer> ids = grams.computeIfAbsent(padded.substring(i, i + 3), g -> new ArrayList<>());
+                if (ids.isEmpty() || ids.get(ids.size() - 1) != n)
+                    ids.add(n);
+            }
+        }
+        Integer[] byName = new Integer[names.length];
+        for (int n = 0; n < names.length; n++)
+            byName[n] = n;
+        Arrays.sort(byName, (a, b) -> normalized[a].compareTo(normalized[b]));
+        this.nameKeys = new String[names.length];
+        this.nameIds = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            nameIds[i] = byName[i];
+            nameKeys[i] = normalized[byName[i]];
+        }
+        entries.sort((a, b) -> ((String) a[0]).compareTo((String) b[0]));
+        this.wordKeys = new String[entries.size()];
+        this.wordNames = new int[entries.size()];
+        this.wordOffsets = new int[entries.size()];
+        for (int i = 0; i < wordKeys.length; i++) {
+            wordKeys[i] = (String) entries.get(i)[0];
+            wordNames[i] = (Integer) entries.get(i)[1];
+            wordOffsets[i] = (Integer) entries.get(i)[2];
+        }
+        for (String gram : grams.keySet())
+            trigrams.put(gram, grams.get(gram).stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Returns the number of names in this index.
+     *
+     * @return the number of indexed names
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Finds the names that best match a query, ranked from best to worst.
+     * Names that start with the query are listed in alphabetical order, then
+     * names with a later word that starts with the query in alphabetical order
+     * from that word on, then misspellings from closest to furthest.
+     *
+     * @param query  the full or partial location name typed by the user
+     * @param offset the number of ranked results to skip (for paging)
+     * @param limit  the largest number of results to return
+     * @return up to limit matching names, starting at rank offset
+     */
+    public List<String> search(String query, int offset, int limit) {
+        String key = normalize(query);
+        int wanted = offset + limit;
+        List<String> page = new ArrayList<>();
+        // the number of matches ranked so far, including skipped ones
+        int rank = 0;
+        if (!key.isEmpty()) {
+            // names that start with the query: skip straight to the offset
+            int first = lowerBound(nameKeys, key);
+            int end = prefixEnd(nameKeys, key, first);
+            rank = Math.min(offset, end - first);
+            for (int i = first + rank; i < end && rank < wanted; i++, rank++)
+                page.add(names[nameIds[i]]);
+            // names with a later word that starts with the query, counting
+            // each name once and only when it was not matched above
+            for (int i = lowerBound(wordKeys, key); i < wordKeys.length && rank < wanted
+                    && wordKeys[i].startsWith(key); i++) {
+                if (firstWordMatch(wordNames[i], wordOffsets[i], key) && rank++ >= offset)
+                    page.add(names[wordNames[i]]);
+            }
+        }
+        // fall back to misspellings only when prefixes do not fill the page,
+        // in which case every prefix match has been ranked above
+        if (rank < wanted && key.length() >= 3) {
+            List<Integer> fuzzy = fuzzyMatches(key);
+            for (int i = 0; i < fuzzy.size() && rank < wanted; i++)
+                if (rank++ >= offset)
+                    page.add(names[fuzzy.get(i)]);
+        }
+        return page;
+    }
+
+    /**
+     * Returns the single best match for a query, such as a misspelled name.
+     *
+     * @param query the full or partial location name typed by the user
+     * @return the best matching name, or null when nothing is close
+     */
+    public String bestMatch(String query) {
+        List<String> matches = search(query, 0, 1);
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    /**
+     * Returns whether a word of a name is the first word of that name to start
+     * with the key, and the name itself does not start with the key.
+     */
+    private boolean firstWordMatch(int name, int wordOffset, String key) {
+        String text = normalized[name];
+        for (int i = 0; i < wordOffset; i++)
+            if ((i == 0 || text.charAt(i - 1) == ' ') && text.startsWith(key, i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns whether the name itself or one of its words starts with the key.
+     */
+    private boolean matchesPrefix(int name, String key) {
+        String text = normalized[name];
+        for (int i = 0; i < text.length(); i++)
+            if ((i == 0 || text.charAt(i - 1) == ' ') && text.startsWith(key, i))
+                return true;
+        return false;
+    }
+
+    /**
+     * Ranks names sharing trigrams with the key by their edit distance to the
+     * key, allowing roughly one typo per three characters typed. Names are
+     * compared both whole and by their prefix of the same length as the key,
+     * so partial names with a typo are found too. Names that match the key as
+     * a prefix are left out, since they are ranked before misspellings.
+     *
+     * @return the indexes of the close names, from closest to furthest
+     */
+    private List<Integer> fuzzyMatches(String key) {
+        HashMap<Integer, Integer> score = new HashMap<>();
+        HashMap<Integer, Integer> overlap = new HashMap<>();
+        String padded = " " + key + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            int[] ids = trigrams.get(padded.substring(i, i + 3));
+            if (ids != null)
+                for (int n : ids)
+                    overlap.merge(n, 1, Integer::sum);
+        }
+        List<Integer> candidates = new ArrayList<>(overlap.keySet());
+        candidates.sort((a, b) -> Integer.compare(overlap.get(b), overlap.get(a)));
+        int allowed = Math.max(1, key.length() / 3);
+        for (int c = 0; c < candidates.size() && c < MAX_FUZZY_CANDIDATES; c++) {
+            int n = candidates.get(c);
+            if (matchesPrefix(n, key))
+                continue;
+            String name = normalized[n];
+            int distance = Math.min(editDistance(key, name, allowed),
+                    editDistance(key, name.substring(0, Math.min(name.length(), key.length())), allowed));
+            if (distance <= allowed)
+                score.put(n, distance);
+        }
+        List<Integer> ranked = new ArrayList<>(score.keySet());
+        ranked.sort((a, b) -> {
+            int byDistance = Integer.compare(score.get(a), score.get(b));
+            if (byDistance != 0)
+                return byDistance;
+            int byLength = Integer.compare(names[a].length(), names[b].length());
+            return byLength != 0 ? byLength : names[a].compareTo(names[b]);
+        });
+        return ranked;
+    }
+
+    /**
+     * Computes the Levenshtein distance between two strings, giving up early
+     * once it is certain to exceed the provided bound.
+     *
+     * @return the distance, or bound + 1 when it is larger than bound
+     */
+    private static int editDistance(String a, String b, int bound) {
+        if (Math.abs(a.length() - b.length()) > bound)
+            return bound + 1;
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++)
+            previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int substitute = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitute, Math.min(previous[j], current[j - 1]) + 1);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > bound)
+                return bound + 1;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], bound + 1);
+    }
+
+    private static int lowerBound(String[] keys, String key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].compareTo(key) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the end of the run of keys starting with key, which begins at
+     * first, the key's lower bound.
+     */
+    private static int prefixEnd(String[] keys, String key, int first) {
+        int low = first;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle].startsWith(key))
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    private static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
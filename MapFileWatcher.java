@@ -0,0 +1,201 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * This MapFileWatcher class keeps a live graph in step with the map file it
+ * was loaded from. Whenever the file changes, the new file is parsed and
+ * compared with the nodes and edges loaded last time, and only the
+ * differences (added or removed nodes, and added, removed or reweighted
+ * edges) are applied to the graph, as one batch.
+ *
+ * Parsing and comparing run without blocking queries. Only the batch itself
+ * is applied while holding the write lock, so queries that hold the read
+ * lock always see the graph either before or after a whole reload.
+ */
+public class MapFileWatcher implements AutoCloseable {
+
+    // time given to an editor to finish writing the file before it is read
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Path file;
+    private final BaseGraph<String, Double> graph;
+    private final ReadWriteLock lock;
+    // the nodes and edge weights the graph was last loaded with
+    private HashMap<String, HashMap<String, Double>> loaded;
+    private long mapHash;
+
+    private WatchService watchService = null;
+    private volatile int reloadCount = 0;
+    private volatile Exception lastError = null;
+
+    /**
+     * Creates a watcher for a graph that was loaded from the provided map
+     * file with DotGraphLoader and has not been changed since.
+     *
+     * @param file  the map file the graph was loaded from
+     * @param graph the graph to keep in step with the file
+     * @param lock  the lock that queries over the graph hold for reading
+     * @throws IOException when there is trouble finding/reading file
+     */
+    public MapFileWatcher(Path file, BaseGraph<String, Double> graph, ReadWriteLock lock) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.graph = graph;
+        this.lock = lock;
+        this.loaded = edges(DotGraphLoader.parse(this.file));
+        this.mapHash = PathCache.hashFile(this.file);
+    }
+
+    /**
+     * Starts watching the map file on a background thread, reloading the
+     * graph each time the file changes.
+     *
+     * @throws IOException when the file's directory cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if (watchService != null)
+            return;
+        watchService = file.getFileSystem().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(this::watch, "map-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reads the map file again and applies the differences from the graph's
+     * last loaded contents to the graph.
+     *
+     * @return the number of node and edge changes applied
+     * @throws IOException when there is trouble finding/reading file
+     */
+    public synchronized int reload() throws IOException {
+        HashMap<String, HashMap<String, Double>> latest = edges(DotGraphLoader.parse(file));
+        long latestHash = PathCache.hashFile(file);
+        BaseGraph<String, Double>.Batch batch = graph.newBatch();
+        // removed nodes take their edges with them, so those edges need no changes
+        for (String name : loaded.keySet())
+            if (!latest.containsKey(name))
+                batch.removeNode(name);
+        for (Map.Entry<String, HashMap<String, Double>> node : latest.entrySet()) {
+            HashMap<String, Double> before = loaded.get(node.getKey());
+            if (before == null)
+                batch.insertNode(node.getKey());
+            for (Map.Entry<String, Double> edge : node.getValue().entrySet()) {
+                Double weight = before == null ? null : before.get(edge.getKey());
+                if (!edge.getValue().equals(weight))
+                    batch.insertEdge(node.getKey(), edge.getKey(), edge.getValue());
+            }
+            if (before != null)
+                for (String succ : before.keySet())
+                    if (!node.getValue().containsKey(succ) && latest.containsKey(succ))
+                        batch.removeEdge(node.getKey(), succ);
+        }
+        int changes;
+        lock.writeLock().lock();
+        try {
+            changes = batch.apply();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        loaded = latest;
+        mapHash = latestHash;
+        reloadCount++;
+        return changes;
+    }
+
+    /**
+     * Returns the hash of the map file contents the graph was last loaded
+     * with, as computed by PathCache.hashFile.
+     *
+     * @return the hash of the loaded map file
+     */
+    public synchronized long getMapHash() {
+        return mapHash;
+    }
+
+    /**
+     * Returns the number of times the graph was reloaded since this watcher
+     * was created.
+     *
+     * @return the number of reloads
+     */
+    public int getReloadCount() {
+        return reloadCount;
+    }
+
+    /**
+     * Returns the exception that stopped the most recent reload started by
+     * the background thread, which leaves the graph as it was before.
+     *
+     * @return the last reload failure, or null when none failed
+     */
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Stops watching the map file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null)
+            watchService.close();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents())
+                    if (file.getFileName().equals(event.context()))
+                        changed = true;
+                key.reset();
+                if (!changed)
+                    continue;
+                // let the writer finish, and fold its remaining events into this reload
+                Thread.sleep(SETTLE_MILLIS);
+                for (WatchKey pending = watchService.poll(); pending != null; pending = watchService.poll()) {
+                    pending.pollEvents();
+                    pending.reset();
+                }
+                try {
+                    reload();
+                    lastError = null;
+                } catch (IOException e) {
+                    lastError = e;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher was closed
+        }
+    }
+
+    /**
+     * Lists the weight of every edge DotGraphLoader inserts for a parsed map,
+     * by predecessor and then successor, with every node present as a key.
+     */
+    private static HashMap<String, HashMap<String, Double>> edges(DotGraphLoader.ParsedMap map) {
+        HashMap<String, HashMap<String, Double>> edges = new HashMap<>(map.names.size() * 2);
+        for (String name : map.names)
+            edges.put(name, new HashMap<>());
+        for (int i = 0; i < map.edgeCount; i++) {
+            String start = map.names.get(map.start[i]);
+            String end = map.names.get(map.end[i]);
+            // as when loading, the first line listing a pair sets both directions
+            edges.get(start).putIfAbsent(end, map.seconds[i]);
+            edges.get(end).putIfAbsent(start, map.seconds[i]);
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap of integer node ids ordered by a double priority. This is
+ * used by the array-based search engines in place of a PriorityQueue of
+ * SearchNodes, so that a search does not allocate an object per visited node.
+ *
+ * The heap does not support decrease-key: a node whose cost improves is simply
+ * added again, and callers skip stale entries when they are removed (an entry
+ * is stale when its priority is larger than the node's current best cost).
+ */
+public class NodeHeap {
+
+    // parallel arrays holding the node id and priority of each heap entry
+    private int[] nodes;
+    private double[] costs;
+    private int size = 0;
+
+    /**
+     * Creates an empty heap.
+     *
+     * @param initialCapacity the number of entries to allocate room for
+     */
+    public NodeHeap(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        this.nodes = new int[capacity];
+        this.costs = new double[capacity];
+    }
+
+    /**
+     * Adds a node with the provided priority.
+     *
+     * @param node the id of the node to add
+     * @param cost the priority of that node, smaller values are removed first
+     */
+    public void add(int node, double cost) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            costs = Arrays.copyOf(costs, size * 2);
+        }
+        // sift the new entry up from the bottom of the heap
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (costs[parent] <= cost)
+                break;
+            nodes[i] = nodes[parent];
+            costs[i] = costs[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        costs[i] = cost;
+    }
+
+    /**
+     * Returns the priority of the smallest entry without removing it.
+     *
+     * @return the smallest priority in the heap
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public double peekCost() {
+        if (size == 0)
+            throw new NoSuchElementException("heap is empty");
+        return costs[0];
+    }
+
+    /**
+     * Returns the node of the smallest entry without removing it.
+     *
+     * @return the node with the smallest priority in the heap
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public int peekNode() {
+        if (size == 0)
+            throw new NoSuchElementException("heap is empty");
+        return nodes[0];
+    }
+
+    /**
+     * Removes the smallest entry, use peekNode and peekCost first to read it.
+     *
+     * @throws NoSuchElementException if the heap is empty
+     */
+    public void remove() {
+        if (size == 0)
+            throw new NoSuchElementException("heap is empty");
+        size--;
+        if (size == 0)
+            return;
+        // sift the last entry down from the top of the heap
+        int node = nodes[size];
+        double cost = costs[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && costs[child + 1] < costs[child])
+                child++;
+            if (cost <= costs[child])
+                break;
+            nodes[i] = nodes[child];
+            costs[i] = costs[child];
+            i = child;
+        }
+        nodes[i] = node;
+        costs[i] = cost;
+    }
+
+    /**
+     * Checks whether the heap has any entries left.
+     *
+     * @return true if the heap is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of entries in the heap, including stale ones.
+     *
+     * @return the number of entries in the heap
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all entries from the heap while keeping its capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+}
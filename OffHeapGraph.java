@@ -0,0 +1,432 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This OffHeapGraph class implements GraphADT with its adjacency lists, edge
+ * weights and node id tables stored outside of the java heap in OffHeapStores.
+ * Only the dictionary between node data and node ids lives on the heap. Each
+ * node record holds the first edge of its leaving and entering lists, and each
+ * edge record links to the next edge leaving its predecessor and the next edge
+ * entering its successor, so no per-edge java objects are ever created.
+ *
+ * Edge weights are stored as doubles, which is why this graph fixes EdgeType
+ * to Double. Shortest paths are computed with Dijkstra's algorithm directly on
+ * the off-heap records. Each search running at once takes its own off-heap
+ * scratch table and queue, which are kept for later searches, so queries may
+ * run in parallel as long as the graph is not modified meanwhile.
+ */
+public class OffHeapGraph<NodeType> implements GraphADT<NodeType, Double>, Closeable {
+
+    // layout of a node record: heads of the leaving and entering edge lists
+    private static final int NODE_BYTES = 8;
+    private static final int NODE_OUT = 0;
+    private static final int NODE_IN = 4;
+
+    // layout of an edge record: endpoints, weight, and the next edge of each list
+    private static final int EDGE_BYTES = 24;
+    private static final int EDGE_PRED = 0;
+    private static final int EDGE_SUCC = 4;
+    private static final int EDGE_WEIGHT = 8;
+    private static final int EDGE_NEXT_OUT = 16;
+    private static final int EDGE_NEXT_IN = 20;
+
+    // layout of a search record: visit stamp, predecessor id, and path cost
+    private static final int SEARCH_BYTES = 16;
+    private static final int SEARCH_STAMP = 0;
+    private static final int SEARCH_PRED = 4;
+    private static final int SEARCH_COST = 8;
+
+    private static final int NONE = -1;
+
+    private final OffHeapStore nodeStore;
+    private final OffHeapStore edgeStore;
+    private final Path directory; // null when the graph is not file-backed
+    // scratch space of searches that are not running, reused by the next ones
+    private final ArrayDeque<Search> idleSearches = new ArrayDeque<>();
+    private int searchCount = 0;
+
+    // on-heap dictionary between node data and node ids (removed ids map to null)
+    private final MapADT<NodeType, Integer> ids = new BasicMap<>();
+    private final List<NodeType> dataById = new ArrayList<>();
+
+    private int edgeCount = 0;
+    private int freeEdge = NONE; // removed edge records are reused through this list
+
+    /**
+     * Creates an empty graph stored in direct (off-heap) memory.
+     */
+    public OffHeapGraph() {
+        this.nodeStore = new OffHeapStore(NODE_BYTES);
+        this.edgeStore = new OffHeapStore(EDGE_BYTES);
+        this.directory = null;
+    }
+
+    /**
+     * Creates an empty graph whose records are memory-mapped from files in
+     * the provided directory, so the graph may be larger than physical memory.
+     *
+     * @param directory the existing directory to create the graph files in
+     * @throws IOException when the graph files cannot be created
+     */
+    public OffHeapGraph(Path directory) throws IOException {
+        this.nodeStore = new OffHeapStore(NODE_BYTES, directory.resolve("nodes.bin"));
+        this.edgeStore = new OffHeapStore(EDGE_BYTES, directory.resolve("edges.bin"));
+        this.directory = directory;
+        // create the first search's file now, so a bad directory fails here
+        idleSearches.push(new Search());
+    }
+
+    @Override
+    public boolean insertNode(NodeType data) {
+        if (ids.containsKey(data))
+            return false; // throws NPE when data's null
+        int id = (int) nodeStore.append();
+        nodeStore.putInt(id, NODE_OUT, NONE);
+        nodeStore.putInt(id, NODE_IN, NONE);
+        dataById.add(data);
+        ids.put(data, id);
+        return true;
+    }
+
+    @Override
+    public boolean removeNode(NodeType data) {
+        if (!ids.containsKey(data))
+            return false; // throws NPE when data==null
+        int id = ids.remove(data);
+        // remove all edges leaving this node from their successors' entering lists
+        for (int edge = nodeStore.getInt(id, NODE_OUT); edge != NONE;) {
+            int next = edgeStore.getInt(edge, EDGE_NEXT_OUT);
+            int succ = edgeStore.getInt(edge, EDGE_SUCC);
+            if (succ != id)
+                unlinkEntering(succ, edge);
+            freeEdge(edge);
+            edge = next;
+        }
+        // remove all edges entering this node from their predecessors' leaving lists
+        for (int edge = nodeStore.getInt(id, NODE_IN); edge != NONE;) {
+            int next = edgeStore.getInt(edge, EDGE_NEXT_IN);
+            int pred = edgeStore.getInt(edge, EDGE_PRED);
+            if (pred != id) {
+                unlinkLeaving(pred, edge);
+                freeEdge(edge);
+            }
+            edge = next;
+        }
+        nodeStore.putInt(id, NODE_OUT, NONE);
+        nodeStore.putInt(id, NODE_IN, NONE);
+        dataById.set(id, null);
+        return true;
+    }
+
+    @Override
+    public boolean containsNode(NodeType data) {
+        return ids.containsKey(data);
+    }
+
+    @Override
+    public int getNodeCount() {
+        return ids.getSize();
+    }
+
+    @Override
+    public boolean insertEdge(NodeType pred, NodeType succ, Double weight) {
+        if (!ids.containsKey(pred) || !ids.containsKey(succ))
+            return false;
+        int predId = ids.get(pred);
+        int succId = ids.get(succ);
+        // when an edge already exists within the graph, update its weight
+        int existing = findEdge(predId, succId);
+        if (existing != NONE) {
+            edgeStore.putDouble(existing, EDGE_WEIGHT, weight);
+            return true;
+        }
+        // otherwise link a new edge record at the head of both adjacent lists
+        int edge = allocateEdge();
+        edgeStore.putInt(edge, EDGE_PRED, predId);
+        edgeStore.putInt(edge, EDGE_SUCC, succId);
+        edgeStore.putDouble(edge, EDGE_WEIGHT, weight);
+        edgeStore.putInt(edge, EDGE_NEXT_OUT, nodeStore.getInt(predId, NODE_OUT));
+        edgeStore.putInt(edge, EDGE_NEXT_IN, nodeStore.getInt(succId, NODE_IN));
+        nodeStore.putInt(predId, NODE_OUT, edge);
+        nodeStore.putInt(succId, NODE_IN, edge);
+        edgeCount++;
+        return true;
+    }
+
+    @Override
+    public boolean removeEdge(NodeType pred, NodeType succ) {
+        if (!ids.containsKey(pred) || !ids.containsKey(succ))
+            return false;
+        int predId = ids.get(pred);
+        int succId = ids.get(succ);
+        int edge = findEdge(predId, succId);
+        if (edge == NONE)
+            return false;
+        unlinkLeaving(predId, edge);
+        unlinkEntering(succId, edge);
+        freeEdge(edge);
+        return true;
+    }
+
+    @Override
+    public boolean containsEdge(NodeType pred, NodeType succ) {
+        if (!ids.containsKey(pred) || !ids.containsKey(succ))
+            return false;
+        return findEdge(ids.get(pred), ids.get(succ)) != NONE;
+    }
+
+    @Override
+    public Double getEdge(NodeType pred, NodeType succ) {
+        int edge = containsNodes(pred, succ) ? findEdge(ids.get(pred), ids.get(succ)) : NONE;
+        if (edge == NONE)
+            throw new NoSuchElementException("No edge from " + pred.toString() + " to " +
+                    succ.toString());
+        return edgeStore.getDouble(edge, EDGE_WEIGHT);
+    }
+
+    @Override
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    @Override
+    public List<NodeType> shortestPathData(NodeType start, NodeType end) {
+        LinkedList<NodeType> path = new LinkedList<>();
+        Search search = acquireSearch();
+        try {
+            int endId = computeShortestPath(search, start, end);
+            // step backwards through the predecessor ids to build the path
+            for (int id = endId; id != NONE; id = search.records.getInt(id, SEARCH_PRED))
+                path.push(dataById.get(id));
+        } finally {
+            releaseSearch(search);
+        }
+        return path;
+    }
+
+    @Override
+    public double shortestPathCost(NodeType start, NodeType end) {
+        Search search = acquireSearch();
+        try {
+            int endId = computeShortestPath(search, start, end);
+            return search.records.getDouble(endId, SEARCH_COST);
+        } finally {
+            releaseSearch(search);
+        }
+    }
+
+    @Override
+    public int nodeId(NodeType data) {
+        return ids.get(data); // throws NSE when data is not found
+    }
+
+    @Override
+    public NodeType nodeData(int id) {
+        NodeType data = id >= 0 && id < dataById.size() ? dataById.get(id) : null;
+        if (data == null)
+            throw new NoSuchElementException("No node with id " + id);
+        return data;
+    }
+
+    @Override
+    public int nodeIdBound() {
+        return dataById.size();
+    }
+
+    @Override
+    public void forEachOutEdge(int id, EdgeVisitor visitor) {
+        nodeData(id); // throws NSE when no node has this id
+        for (int edge = nodeStore.getInt(id, NODE_OUT); edge != NONE; edge = edgeStore.getInt(edge, EDGE_NEXT_OUT))
+            visitor.visit(edgeStore.getInt(edge, EDGE_SUCC), edgeStore.getDouble(edge, EDGE_WEIGHT));
+    }
+
+    @Override
+    public void forEachInEdge(int id, EdgeVisitor visitor) {
+        nodeData(id); // throws NSE when no node has this id
+        for (int edge = nodeStore.getInt(id, NODE_IN); edge != NONE; edge = edgeStore.getInt(edge, EDGE_NEXT_IN))
+            visitor.visit(edgeStore.getInt(edge, EDGE_PRED), edgeStore.getDouble(edge, EDGE_WEIGHT));
+    }
+
+    @Override
+    public List<NodeType> keySet() {
+        List<NodeType> keys = new LinkedList<>();
+        for (NodeType data : dataById)
+            if (data != null)
+                keys.add(data);
+        return keys;
+    }
+
+    /**
+     * Releases the files backing this graph, if it is file-backed.
+     *
+     * @throws IOException when the graph files cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        nodeStore.close();
+        edgeStore.close();
+        synchronized (idleSearches) {
+            for (Search search : idleSearches)
+                search.records.close();
+            idleSearches.clear();
+        }
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from start until the end node is settled. The
+     * results are left in the search's records, which are only valid for node
+     * ids whose stamp matches the search's current stamp.
+     *
+     * @param search the scratch space to search with, owned by the caller
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return the id of the end node
+     * @throws NoSuchElementException when no path from start to end is found
+     *                                or when either start or end data do not
+     *                                correspond to a graph node
+     */
+    private int computeShortestPath(Search search, NodeType start, NodeType end) {
+        if (!containsNodes(start, end))
+            throw new NoSuchElementException("specified start or end node not present in the graph");
+        int startId = ids.get(start);
+        int endId = ids.get(end);
+        OffHeapStore searchStore = search.records;
+        // records of nodes inserted since the last search start out unvisited
+        while (searchStore.size() < dataById.size())
+            searchStore.append();
+        // a new stamp marks every search record from previous queries as unvisited
+        int stamp = ++search.stamp;
+        NodeHeap queue = search.queue;
+        queue.clear();
+        visit(searchStore, startId, stamp, 0.0, NONE);
+        queue.add(startId, 0.0);
+        while (!queue.isEmpty()) {
+            int current = queue.peekNode();
+            double cost = queue.peekCost();
+            queue.remove();
+            // skip queue entries whose node has since been reached more cheaply
+            if (cost > searchStore.getDouble(current, SEARCH_COST))
+                continue;
+            if (current == endId)
+                return endId;
+            for (int edge = nodeStore.getInt(current, NODE_OUT); edge != NONE;
+                    edge = edgeStore.getInt(edge, EDGE_NEXT_OUT)) {
+                int succ = edgeStore.getInt(edge, EDGE_SUCC);
+                double succCost = cost + edgeStore.getDouble(edge, EDGE_WEIGHT);
+                if (searchStore.getInt(succ, SEARCH_STAMP) != stamp
+                        || succCost < searchStore.getDouble(succ, SEARCH_COST)) {
+                    visit(searchStore, succ, stamp, succCost, current);
+                    queue.add(succ, succCost);
+                }
+            }
+        }
+        throw new NoSuchElementException("no path exists between start and end nodes");
+    }
+
+    private static void visit(OffHeapStore searchStore, int id, int stamp, double cost, int pred) {
+        searchStore.putInt(id, SEARCH_STAMP, stamp);
+        searchStore.putInt(id, SEARCH_PRED, pred);
+        searchStore.putDouble(id, SEARCH_COST, cost);
+    }
+
+    /**
+     * Takes the scratch space of an idle search, or creates a new one when
+     * every search is running.
+     */
+    private Search acquireSearch() {
+        synchronized (idleSearches) {
+            Search search = idleSearches.poll();
+            return search != null ? search : new Search();
+        }
+    }
+
+    private void releaseSearch(Search search) {
+        synchronized (idleSearches) {
+            idleSearches.push(search);
+        }
+    }
+
+    /**
+     * The scratch space of one search: a search record per node, and the
+     * queue of nodes to settle.
+     */
+    private final class Search {
+        private final OffHeapStore records;
+        private final NodeHeap queue = new NodeHeap(64);
+        private int stamp = 0;
+
+        // searchCount only changes under the idleSearches lock, or before the
+        // graph is shared with other threads
+        private Search() {
+            int number = searchCount++;
+            if (directory == null) {
+                this.records = new OffHeapStore(SEARCH_BYTES);
+                return;
+            }
+            try {
+                String name = number == 0 ? "search.bin" : "search-" + number + ".bin";
+                this.records = new OffHeapStore(SEARCH_BYTES, directory.resolve(name));
+            } catch (IOException e) {
+                throw new UncheckedIOException("cannot create search file", e);
+            }
+        }
+    }
+
+    private boolean containsNodes(NodeType pred, NodeType succ) {
+        return ids.containsKey(pred) && ids.containsKey(succ);
+    }
+
+    private int findEdge(int predId, int succId) {
+        // search for the edge through the predecessor's list of leaving edges
+        for (int edge = nodeStore.getInt(predId, NODE_OUT); edge != NONE;
+                edge = edgeStore.getInt(edge, EDGE_NEXT_OUT))
+            if (edgeStore.getInt(edge, EDGE_SUCC) == succId)
+                return edge;
+        return NONE;
+    }
+
+    private void unlinkLeaving(int predId, int edge) {
+        int next = edgeStore.getInt(edge, EDGE_NEXT_OUT);
+        int current = nodeStore.getInt(predId, NODE_OUT);
+        if (current == edge) {
+            nodeStore.putInt(predId, NODE_OUT, next);
+            return;
+        }
+        while (edgeStore.getInt(current, EDGE_NEXT_OUT) != edge)
+            current = edgeStore.getInt(current, EDGE_NEXT_OUT);
+        edgeStore.putInt(current, EDGE_NEXT_OUT, next);
+    }
+
+    private void unlinkEntering(int succId, int edge) {
+        int next = edgeStore.getInt(edge, EDGE_NEXT_IN);
+        int current = nodeStore.getInt(succId, NODE_IN);
+        if (current == edge) {
+            nodeStore.putInt(succId, NODE_IN, next);
+            return;
+        }
+        while (edgeStore.getInt(current, EDGE_NEXT_IN) != edge)
+            current = edgeStore.getInt(current, EDGE_NEXT_IN);
+        edgeStore.putInt(current, EDGE_NEXT_IN, next);
+    }
+
+    private int allocateEdge() {
+        if (freeEdge == NONE)
+            return (int) edgeStore.append();
+        int edge = freeEdge;
+        freeEdge = edgeStore.getInt(edge, EDGE_NEXT_OUT);
+        return edge;
+    }
+
+    private void freeEdge(int edge) {
+        edgeStore.putInt(edge, EDGE_NEXT_OUT, freeEdge);
+        freeEdge = edge;
+        edgeCount--;
+    }
+}
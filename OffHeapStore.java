@@ -0,0 +1,161 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An OffHeapStore holds a growable array of fixed-size records outside of the
+ * java heap. Records are addressed by a long index and split across chunks of
+ * direct ByteBuffers, so the store is not limited to 2GB the way a single
+ * buffer is. When a file is provided the chunks are memory-mapped regions of
+ * that file instead, which lets the operating system page them in and out.
+ *
+ * Only the chunk list itself lives on the heap, so the garbage collector sees a
+ * handful of buffer objects no matter how many records are stored.
+ */
+public class OffHeapStore implements Closeable {
+
+    // number of records stored in each chunk (a power of two)
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+
+    private final int recordBytes;
+    private final FileChannel channel; // null when the store is not file-backed
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long size = 0;
+
+    /**
+     * Creates an empty store backed by direct (off-heap) memory.
+     *
+     * @param recordBytes the number of bytes in each record
+     */
+    public OffHeapStore(int recordBytes) {
+        this.recordBytes = recordBytes;
+        this.channel = null;
+    }
+
+    /**
+     * Creates an empty store whose records are memory-mapped from a file. Any
+     * previous contents of that file are discarded.
+     *
+     * @param recordBytes the number of bytes in each record
+     * @param file        the file to map the records from
+     * @throws IOException when the file cannot be opened for writing
+     */
+    public OffHeapStore(int recordBytes, Path file) throws IOException {
+        this.recordBytes = recordBytes;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Appends a new zero-filled record to the end of the store.
+     *
+     * @return the index of the new record
+     */
+    public long append() {
+        long index = size;
+        int chunk = (int) (index >>> CHUNK_SHIFT);
+        if (chunk == chunks.size())
+            chunks.add(allocateChunk(chunk));
+        size++;
+        return index;
+    }
+
+    /**
+     * Returns the number of records in the store.
+     *
+     * @return the number of records in the store
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Reads an int field from a record.
+     *
+     * @param index  the index of the record
+     * @param offset the byte offset of the field within the record
+     * @return the value of that field
+     */
+    public int getInt(long index, int offset) {
+        return chunk(index).getInt(position(index, offset));
+    }
+
+    /**
+     * Writes an int field of a record.
+     *
+     * @param index  the index of the record
+     * @param offset the byte offset of the field within the record
+     * @param value  the value to store in that field
+     */
+    public void putInt(long index, int offset, int value) {
+        chunk(index).putInt(position(index, offset), value);
+    }
+
+    /**
+     * Reads a double field from a record.
+     *
+     * @param index  the index of the record
+     * @param offset the byte offset of the field within the record
+     * @return the value of that field
+     */
+    public double getDouble(long index, int offset) {
+        return chunk(index).getDouble(position(index, offset));
+    }
+
+    /**
+     * Writes a double field of a record.
+     *
+     * @param index  the index of the record
+     * @param offset the byte offset of the field within the record
+     * @param value  the value to store in that field
+     */
+    public void putDouble(long index, int offset, double value) {
+        chunk(index).putDouble(position(index, offset), value);
+    }
+
+    /**
+     * Releases the file backing this store, if there is one. Direct memory is
+     * released by the garbage collector once the store is unreachable.
+     *
+     * @throws IOException when the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        chunks.clear();
+        if (channel != null)
+            channel.close();
+    }
+
+    private ByteBuffer chunk(long index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("record " + index + " out of " + size);
+        return chunks.get((int) (index >>> CHUNK_SHIFT));
+    }
+
+    private int position(long index, int offset) {
+        return (int) (index & (CHUNK_RECORDS - 1)) * recordBytes + offset;
+    }
+
+    private ByteBuffer allocateChunk(int chunk) {
+        long chunkBytes = (long) CHUNK_RECORDS * recordBytes;
+        ByteBuffer buffer;
+        if (channel == null) {
+            buffer = ByteBuffer.allocateDirect((int) chunkBytes);
+        } else {
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, chunk * chunkBytes, chunkBytes);
+            } catch (IOException e) {
+                throw new IllegalStateException("could not map chunk " + chunk + " of graph file", e);
+            }
+        }
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+}
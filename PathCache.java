@@ -0,0 +1,302 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * This PathCache class answers shortest path queries over a DijkstraGraph
+ * from a bounded cache of shortest path trees, one per recently used start
+ * node. Any query from a cached start node is answered by walking that tree,
+ * without searching the graph again.
+ *
+ * The cache can be saved to a snapshot file and loaded again after a restart.
+ * Snapshots are tagged with a hash of the map file the graph was loaded from,
+ * and a snapshot taken for a different map is deleted instead of loaded. Each
+ * tree of a loaded snapshot is memory-mapped on its own, so snapshots may be
+ * larger than one mapped buffer, and a tree is only read when the first query
+ * from its start node arrives.
+ *
+ * Cached trees are dropped whenever the graph's version changes.
+ */
+public class PathCache<NodeType> {
+
+    private static final int MAGIC = 0x50434831; // "PCH1"
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 4 + 4;
+    private static final int INDEX_ENTRY_BYTES = 4 + 8;
+
+    private final DijkstraGraph<NodeType, ? extends Number> graph;
+    private final int capacity;
+    private CsrGraph<NodeType> snapshot;
+    private long snapshotVersion;
+    // cached trees by start node id, least recently used first
+    private final LinkedHashMap<Integer, ShortestPathTree<NodeType>> trees;
+    // trees in a loaded snapshot file that have not been read yet
+    private Map<Integer, MappedByteBuffer> mappedTrees = new HashMap<>();
+
+    /**
+     * Creates an empty cache over a graph.
+     *
+     * @param graph    the graph to answer queries over
+     * @param capacity the largest number of trees to keep in memory
+     */
+    public PathCache(DijkstraGraph<NodeType, ? extends Number> graph, int capacity) {
+        this.graph = graph;
+        this.capacity = capacity;
+        this.trees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ShortestPathTree<NodeType>> eldest) {
+                return size() > PathCache.this.capacity;
+            }
+        };
+        refresh();
+    }
+
+    /**
+     * Returns the list of data values from nodes along the shortest path
+     * from the node with the provided start value through the node with the
+     * provided end value.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return list of data item from node along this shortest path
+     * @throws NoSuchElementException when no path from start to end
+     *         is found or when either start or end is not in the graph
+     */
+    public synchronized List<NodeType> shortestPathData(NodeType start, NodeType end) {
+        ShortestPathTree<NodeType> tree = tree(start);
+        return tree.pathData(snapshot.id(end));
+    }
+
+    /**
+     * Returns the cost, node ids and node data along the shortest path from
+     * the node with the provided start value to the node with the provided
+     * end value. Node ids are ids in the cache's current graph snapshot.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return the path from start to end
+     * @throws NoSuchElementException when no path from start to end
+     *         is found or when either start or end is not in the graph
+     */
+    public synchronized PathResult<NodeType> shortestPath(NodeType start, NodeType end) {
+        ShortestPathTree<NodeType> tree = tree(start);
+        return tree.pathResult(snapshot.id(end));
+    }
+
+    /**
+     * Returns the cost of the shortest path from the node containing the start
+     * data to the node containing the end data.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return the cost of the shortest path between these nodes
+     * @throws NoSuchElementException when no path from start to end
+     *         is found or when either start or end is not in the graph
+     */
+    public synchronized double shortestPathCost(NodeType start, NodeType end) {
+        ShortestPathTree<NodeType> tree = tree(start);
+        int endId = snapshot.id(end);
+        if (!tree.reaches(endId))
+            throw new NoSuchElementException("no path exists between start and end nodes");
+        return tree.cost(endId);
+    }
+
+    /**
+     * Returns the number of trees that can answer queries without a search,
+     * including trees in a loaded snapshot that have not been read yet.
+     *
+     * @return the number of cached trees
+     */
+    public synchronized int size() {
+        refresh();
+        return trees.size() + mappedTrees.size();
+    }
+
+    /**
+     * Writes every cached tree to a snapshot file. The file is written next to
+     * its final location first and then moved into place, so a crash never
+     * leaves a half-written snapshot behind.
+     *
+     * @param file      the snapshot file to write
+     * @param graphHash the hash of the map file the graph was loaded from
+     * @throws IOException when the file cannot be written
+     */
+    public synchronized void save(Path file, long graphHash) throws IOException {
+        refresh();
+        // read any trees still only in the old snapshot before it is replaced
+        for (Integer source : mappedTrees.keySet().toArray(new Integer[0]))
+            trees.putIfAbsent(source, readMappedTree(source));
+        int n = snapshot.getNodeCount();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeLong(graphHash);
+            output.writeLong(nodeOrderHash());
+            output.writeInt(n);
+            output.writeInt(trees.size());
+            long offset = HEADER_BYTES + (long) trees.size() * INDEX_ENTRY_BYTES;
+            for (Integer source : trees.keySet()) {
+                output.writeInt(source);
+                output.writeLong(offset);
+                offset += n * 12L;
+            }
+            for (ShortestPathTree<NodeType> tree : trees.values()) {
+                for (int v = 0; v < n; v++)
+                    output.writeDouble(tree.cost(v));
+                for (int v = 0; v < n; v++)
+                    output.writeInt(tree.predecessor(v));
+            }
+        }
+        mappedTrees = new HashMap<>();
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads the trees in a snapshot file. The trees themselves are read lazily
+     * through a memory mapping when they are first used. A snapshot that was
+     * taken for a different map, or for a different node numbering, is stale:
+     * it is deleted and nothing is loaded.
+     *
+     * @param file      the snapshot file to read
+     * @param graphHash the hash of the map file the graph was loaded from
+     * @return true if the snapshot was loaded, false if it was missing or stale
+     * @throws IOException when the file exists but cannot be read, or when the
+     *                     graph is too large for one tree to be mapped
+     */
+    public synchronized boolean load(Path file, long graphHash) throws IOException {
+        if (!Files.exists(file))
+            return false;
+        refresh();
+        int n = snapshot.getNodeCount();
+        long treeBytes = n * 12L;
+        if (treeBytes > Integer.MAX_VALUE)
+            throw new IOException("cannot map trees of " + n + " nodes: each tree is larger than 2GB");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            boolean valid = size >= HEADER_BYTES;
+            int count = 0;
+            if (valid) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+                header.order(ByteOrder.BIG_ENDIAN); // DataOutputStream writes big-endian
+                valid = header.getInt(0) == MAGIC
+                        && header.getLong(4) == graphHash
+                        && header.getLong(12) == nodeOrderHash()
+                        && header.getInt(20) == n;
+                count = valid ? header.getInt(24) : 0;
+                valid = valid && count >= 0 && size == HEADER_BYTES + (long) count * (INDEX_ENTRY_BYTES + treeBytes);
+            }
+            if (!valid) {
+                Files.delete(file);
+                return false;
+            }
+            if ((long) count * INDEX_ENTRY_BYTES > Integer.MAX_VALUE)
+                throw new IOException("cannot map the index of " + count + " trees: it is larger than 2GB");
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES,
+                    (long) count * INDEX_ENTRY_BYTES);
+            index.order(ByteOrder.BIG_ENDIAN);
+            Map<Integer, MappedByteBuffer> mappings = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                int source = index.getInt(i * INDEX_ENTRY_BYTES);
+                long offset = index.getLong(i * INDEX_ENTRY_BYTES + 4);
+                if (offset < HEADER_BYTES || offset > size - treeBytes)
+                    throw new IOException(file + " has a tree outside of the file");
+                MappedByteBuffer tree = channel.map(FileChannel.MapMode.READ_ONLY, offset, treeBytes);
+                tree.order(ByteOrder.BIG_ENDIAN);
+                mappings.put(source, tree);
+            }
+            this.mappedTrees = mappings;
+            return true;
+        }
+    }
+
+    /**
+     * Computes the hash used to tag snapshots from the contents of a map file.
+     *
+     * @param file the map file the graph is loaded from
+     * @return a 64-bit hash of that file's bytes
+     * @throws IOException when the file cannot be read
+     */
+    public static long hashFile(Path file) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1 << 16];
+            for (int read; (read = input.read(buffer)) > 0;)
+                digest.update(buffer, 0, read);
+            byte[] hash = digest.digest();
+            long value = 0;
+            for (int i = 0; i < 8; i++)
+                value = (value << 8) | (hash[i] & 0xff);
+            return value;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns the tree for a start node, reading it from the snapshot or
+     * computing it when it is not cached.
+     */
+    private ShortestPathTree<NodeType> tree(NodeType start) {
+        refresh();
+        int source = snapshot.id(start);
+        ShortestPathTree<NodeType> tree = trees.get(source);
+        if (tree == null) {
+            tree = mappedTrees.containsKey(source) ? readMappedTree(source) : snapshot.shortestPathTree(source);
+            mappedTrees.remove(source);
+            trees.put(source, tree);
+        }
+        return tree;
+    }
+
+    private ShortestPathTree<NodeType> readMappedTree(int source) {
+        int n = snapshot.getNodeCount();
+        // load checked that a whole tree, 12 bytes per node, fits in one mapping
+        MappedByteBuffer mapped = mappedTrees.get(source);
+        double[] cost = new double[n];
+        int[] pred = new int[n];
+        for (int v = 0; v < n; v++)
+            cost[v] = mapped.getDouble(v * 8);
+        for (int v = 0; v < n; v++)
+            pred[v] = mapped.getInt(n * 8 + v * 4);
+        return new ShortestPathTree<>(snapshot, source, cost, pred);
+    }
+
+    /**
+     * Drops every cached tree and takes a new snapshot of the graph when the
+     * graph has changed since the last snapshot.
+     */
+    private void refresh() {
+        if (snapshot != null && snapshotVersion == graph.getVersion())
+            return;
+        snapshot = CsrGraph.of(graph);
+        snapshotVersion = graph.getVersion();
+        trees.clear();
+        mappedTrees = new HashMap<>();
+    }
+
+    /**
+     * Hashes the data of every node in id order, so a snapshot is only used
+     * when it numbers nodes the same way as the current graph snapshot.
+     */
+    private long nodeOrderHash() {
+        long hash = 1125899906842597L;
+        for (int v = 0; v < snapshot.getNodeCount(); v++)
+            hash = 31 * hash + snapshot.data(v).hashCode();
+        return hash;
+    }
+}
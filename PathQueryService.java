@@ -0,0 +1,200 @@
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This PathQueryService class answers shortest path queries over a
+ * DijkstraGraph asynchronously. Queries run on a fixed number of worker
+ * threads and wait in a bounded queue, so a burst of queries cannot overload
+ * the machine: once the queue is full, new queries fail right away with a
+ * RejectedExecutionException instead of piling up.
+ *
+ * Identical queries (same start and end) that arrive while one of them is
+ * still queued or running share that single search and its result.
+ *
+ * The graph must not be modified while queries are running.
+ */
+public class PathQueryService<NodeType> implements AutoCloseable {
+
+    private final DijkstraGraph<NodeType, ? extends Number> graph;
+    private final ThreadPoolExecutor executor;
+    // queries that are queued or running, by their start and end
+    private final ConcurrentHashMap<List<NodeType>, CompletableFuture<PathResult<NodeType>>> inFlight =
+            new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Creates a service with its own worker threads.
+     *
+     * @param graph         the graph to answer queries over
+     * @param threads       the number of queries that may run at once
+     * @param queueCapacity the number of queries that may wait for a thread
+     */
+    public PathQueryService(DijkstraGraph<NodeType, ? extends Number> graph, int threads, int queueCapacity) {
+        this.graph = graph;
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "path-query-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), factory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues a search for the shortest path from the node with the provided
+     * start value to the node with the provided end value. When the same
+     * query is already queued or running, its result is shared instead.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return a future completed with the path's cost, node ids and node
+     *         data, or exceptionally with a NoSuchElementException when there
+     *         is no path, or a RejectedExecutionException when the queue was
+     *         full
+     */
+    public CompletableFuture<PathResult<NodeType>> shortestPath(NodeType start, NodeType end) {
+        List<NodeType> key = List.of(start, end);
+        CompletableFuture<PathResult<NodeType>> created = new CompletableFuture<>();
+        CompletableFuture<PathResult<NodeType>> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            // each caller gets its own copy, so cancelling one leaves the others
+            return existing.copy();
+        }
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                recordWait(queuedAt);
+                try {
+                    created.complete(graph.shortestPath(start, end));
+                } catch (RuntimeException e) {
+                    created.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, created);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return created.copy();
+    }
+
+    /**
+     * Queues a search for the data items along the shortest path, as
+     * shortestPath does.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return a future completed with the read-only list of data items along
+     *         the path, or exceptionally as for shortestPath
+     */
+    public CompletableFuture<List<NodeType>> shortestPathData(NodeType start, NodeType end) {
+        return shortestPath(start, end).thenApply(PathResult::getPath);
+    }
+
+    /**
+     * Queues a search for the shortest path that must finish within the
+     * provided time, counted from this call so that time spent waiting in the
+     * queue counts too. A search that runs out of time completes with the
+     * partial result it reached. Timed queries are never shared.
+     *
+     * @param start   the data item in the starting node for the path
+     * @param end     the data item in the destination node for the path
+     * @param timeout the time the query may take
+     * @param unit    the unit of timeout
+     * @return a future completed with the complete or partial result, or
+     *         exceptionally as for shortestPathData
+     */
+    public CompletableFuture<BoundedPathResult<NodeType>> shortestPathWithin(NodeType start, NodeType end,
+            long timeout, TimeUnit unit) {
+        QueryControl control = QueryControl.withTimeout(timeout, unit);
+        CompletableFuture<BoundedPathResult<NodeType>> result = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                recordWait(queuedAt);
+                try {
+                    result.complete(graph.shortestPathWithin(start, end, control));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            result.completeExceptionally(e);
+        }
+        // cancelling the future also stops its search
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled())
+                control.cancel();
+        });
+        return result;
+    }
+
+    /**
+     * Returns the number of queries waiting for a worker thread.
+     *
+     * @return the current queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Returns the average time queries waited in the queue before a worker
+     * thread started them.
+     *
+     * @return the average wait in milliseconds, or 0 before any query started
+     */
+    public double getAverageWaitMillis() {
+        long count = started.sum();
+        return count == 0 ? 0.0 : totalWaitNanos.sum() / (count * 1e6);
+    }
+
+    /**
+     * Returns the number of queries that shared the search of an identical
+     * query instead of running their own.
+     *
+     * @return the number of coalesced queries
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * Returns the number of queries that failed because the queue was full.
+     *
+     * @return the number of rejected queries
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stops accepting queries. Queries already queued still run.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void recordWait(long queuedAt) {
+        started.increment();
+        totalWaitNanos.add(System.nanoTime() - queuedAt);
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+
+/**
+ * A PathResult holds everything one shortest path search finds between two
+ * nodes: the total cost, the ids of the nodes along the path, the weight of
+ * each edge along it, and the cost of the path up to each of its nodes. The
+ * costs up to each node are added up from the edge weights, so every leg
+ * reports exactly the weight of its edge. Node ids belong to the graph that
+ * answered the query, which also provides the node data for each id.
+ *
+ * The path's node data is available through a list view that looks up each
+ * node's data only when it is read, so a caller that only needs the cost, the
+ * hop count or the ids never creates a list of node data at all.
+ */
+public class PathResult<NodeType> {
+
+    private final int[] nodeIds;
+    private final double[] legCosts;
+    private final double[] costs;
+    private final IntFunction<NodeType> nodeData;
+    private List<NodeType> path = null;
+
+    /**
+     * Creates a result from the arrays filled in by a search.
+     *
+     * @param nodeIds  the ids of the nodes along the path, from start to end
+     * @param legCosts the weight of each edge along the path, from start to end
+     * @param nodeData looks up the data of a node by its id
+     */
+    public PathResult(int[] nodeIds, double[] legCosts, IntFunction<NodeType> nodeData) {
+        if (nodeIds.length == 0 || legCosts.length != nodeIds.length - 1)
+            throw new IllegalArgumentException("a path needs at least one node, and one cost per edge between them");
+        this.nodeIds = nodeIds;
+        this.legCosts = legCosts;
+        this.nodeData = nodeData;
+        // add the legs up in path order, just as a search adds up the cost of each node
+        costs = new double[nodeIds.length];
+        for (int leg = 0; leg < legCosts.length; leg++)
+            costs[leg + 1] = costs[leg] + legCosts[leg];
+    }
+
+    /** @return the total cost of the path */
+    public double getCost() {
+        return costs[costs.length - 1];
+    }
+
+    /** @return the number of edges along the path */
+    public int getHopCount() {
+        return nodeIds.length - 1;
+    }
+
+    /**
+     * Returns the id of a node along the path.
+     *
+     * @param index the position of the node, where 0 is the start
+     * @return the id of that node
+     */
+    public int getNodeId(int index) {
+        return nodeIds[index];
+    }
+
+    /** @return a copy of the ids of the nodes along the path, from start to end */
+    public int[] getNodeIds() {
+        return nodeIds.clone();
+    }
+
+    /**
+     * Returns the cost of one edge along the path.
+     *
+     * @param leg the position of the edge, where 0 leaves the start
+     * @return the weight of that edge
+     */
+    public double getLegCost(int leg) {
+        return legCosts[leg];
+    }
+
+    /**
+     * Returns the cost of the path from its start to one of its nodes.
+     *
+     * @param index the position of the node, where 0 is the start
+     * @return the cost of reaching that node along the path
+     */
+    public double getCostTo(int index) {
+        return costs[index];
+    }
+
+    /**
+     * Returns a read-only view of the data of the nodes along the path. Each
+     * element is looked up from its node id when it is read.
+     *
+     * @return the node data along the path, from start to end
+     */
+    public List<NodeType> getPath() {
+        if (path == null)
+            path = new PathView();
+        return path;
+    }
+
+    // looks up node data on every read, instead of copying it into a list
+    private class PathView extends AbstractList<NodeType> implements RandomAccess {
+        @Override
+        public NodeType get(int index) {
+            return nodeData.apply(nodeIds[index]);
+        }
+
+        @Override
+        public int size() {
+            return nodeIds.length;
+        }
+    }
+}
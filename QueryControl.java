@@ -0,0 +1,93 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A QueryControl limits how long a shortest path search may run. It holds an
+ * optional deadline and a cancellation flag that another thread may set. A
+ * search checks the control once every checkInterval settled nodes, so the
+ * checks cost almost nothing compared to the search itself, and stops at the
+ * next check after the deadline passes or the control is cancelled.
+ *
+ * One control may be shared by several queries, so that cancelling it stops
+ * all of them.
+ */
+public class QueryControl {
+
+    // number of settled nodes between two checks, unless another is requested
+    public static final int DEFAULT_CHECK_INTERVAL = 256;
+
+    private final long deadlineNanos;
+    private final boolean hasDeadline;
+    private final int checkInterval;
+    private volatile boolean cancelled = false;
+
+    private QueryControl(long deadlineNanos, boolean hasDeadline, int checkInterval) {
+        if (checkInterval < 1)
+            throw new IllegalArgumentException("check interval must be at least 1");
+        this.deadlineNanos = deadlineNanos;
+        this.hasDeadline = hasDeadline;
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Creates a control without a deadline, which only stops when cancelled.
+     *
+     * @return a new control
+     */
+    public static QueryControl cancellable() {
+        return new QueryControl(0L, false, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * Creates a control whose deadline is a fixed time from now.
+     *
+     * @param timeout the time a search may run for
+     * @param unit    the unit of timeout
+     * @return a new control
+     */
+    public static QueryControl withTimeout(long timeout, TimeUnit unit) {
+        return withDeadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Creates a control with a deadline.
+     *
+     * @param deadlineNanos the value of System.nanoTime() at which searches stop
+     * @return a new control
+     */
+    public static QueryControl withDeadline(long deadlineNanos) {
+        return new QueryControl(deadlineNanos, true, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * Returns a copy of this control that is checked at a different interval.
+     * The copy shares the deadline but not the cancellation flag.
+     *
+     * @param settledNodes the number of settled nodes between two checks
+     * @return a new control
+     */
+    public QueryControl checkingEvery(int settledNodes) {
+        return new QueryControl(deadlineNanos, hasDeadline, settledNodes);
+    }
+
+    /**
+     * Asks every search using this control to stop at its next check.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /** @return true if cancel has been called */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** @return true if this control has a deadline and it has passed */
+    public boolean isExpired() {
+        return hasDeadline && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /** @return the number of settled nodes between two checks */
+    public int getCheckInterval() {
+        return checkInterval;
+    }
+}
@@ -0,0 +1,286 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This ReachabilityIndex class answers whether any path leads from one node of
+ * a graph to another, without a shortest path search. It is built from a
+ * snapshot of the graph in three steps:
+ *
+ * - the strongly connected components are found with Tarjan's algorithm, so
+ *   every node in a component reaches every other node in it
+ * - the components and the edges between them form a DAG (the condensation),
+ *   numbered so that every edge leads to a lower numbered component
+ * - each component is labeled with one interval per random depth first
+ *   traversal of the DAG, so that a component's intervals contain those of
+ *   every component it reaches (GRAIL labeling)
+ *
+ * Most pairs are answered from their components' numbers and intervals in
+ * constant time. Pairs whose intervals cannot rule out a path are answered by
+ * a depth first search of the DAG, pruned by the same tests.
+ *
+ * The index is rebuilt the first time it is used after the graph's version
+ * changes.
+ */
+public class ReachabilityIndex<NodeType> {
+
+    // number of random traversals, and so of intervals per component
+    private static final int TRAVERSALS = 2;
+
+    private final BaseGraph<NodeType, ? extends Number> graph;
+    private CsrGraph<NodeType> snapshot;
+    private long snapshotVersion;
+
+    // the component of every node, numbered so edges lead to lower numbers
+    private int[] component;
+    private int componentCount;
+    // the condensation DAG's edges by source component
+    private int[] dagStart;
+    private int[] dagTarget;
+    // lows[t][c] and ranks[t][c] are the interval of component c in traversal t
+    private int[][] lows;
+    private int[][] ranks;
+    // scratch marks for the fallback search, valid when equal to searchStamp
+    private int[] visited;
+    private int searchStamp = 0;
+
+    /**
+     * Creates an index over a graph. The index is built when first used.
+     *
+     * @param graph the graph to answer reachability queries over
+     */
+    public ReachabilityIndex(BaseGraph<NodeType, ? extends Number> graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Returns whether a path leads from the node containing the start data to
+     * the node containing the end data.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return true when such a path exists, and false otherwise
+     * @throws NoSuchElementException when either start or end is not in the
+     *                                graph
+     */
+    public synchronized boolean canReach(NodeType start, NodeType end) {
+        refresh();
+        int from = component[snapshot.id(start)];
+        int to = component[snapshot.id(end)];
+        if (from == to)
+            return true;
+        if (!mayReach(from, to))
+            return false;
+        // the labels cannot rule out a path, so search the DAG for one
+        if (++searchStamp == 0) {
+            Arrays.fill(visited, 0);
+            searchStamp = 1;
+        }
+        int[] stack = new int[componentCount];
+        int size = 0;
+        stack[size++] = from;
+        visited[from] = searchStamp;
+        while (size > 0) {
+            int c = stack[--size];
+            for (int e = dagStart[c]; e < dagStart[c + 1]; e++) {
+                int next = dagTarget[e];
+                if (next == to)
+                    return true;
+                if (visited[next] != searchStamp && mayReach(next, to)) {
+                    visited[next] = searchStamp;
+                    stack[size++] = next;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of strongly connected components in the graph.
+     *
+     * @return the number of components
+     */
+    public synchronized int getComponentCount() {
+        refresh();
+        return componentCount;
+    }
+
+    /**
+     * Returns false when component from certainly cannot reach component to:
+     * when to is not numbered lower, or when one of its intervals is not
+     * contained in the matching interval of from.
+     */
+    private boolean mayReach(int from, int to) {
+        if (to > from)
+            return false;
+        for (int t = 0; t < TRAVERSALS; t++)
+            if (lows[t][to] < lows[t][from] || ranks[t][to] > ranks[t][from])
+                return false;
+        return true;
+    }
+
+    /**
+     * Rebuilds the index when the graph has changed since it was built.
+     */
+    private void refresh() {
+        if (snapshot != null && snapshotVersion == graph.getVersion())
+            return;
+        snapshot = CsrGraph.of(graph);
+        snapshotVersion = graph.getVersion();
+        findComponents();
+        buildDag();
+        labelDag();
+        visited = new int[componentCount];
+        searchStamp = 0;
+    }
+
+    /**
+     * Numbers the strongly connected components with an iterative version of
+     * Tarjan's algorithm. Tarjan's algorithm completes a component only after
+     * every component it reaches, so numbering them in the order they are
+     * completed makes every edge between components lead to a lower number.
+     */
+    private void findComponents() {
+        int n = snapshot.getNodeCount();
+        component = new int[n];
+        componentCount = 0;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int stackSize = 0;
+        // the depth first search's own stack: a node and its next edge to follow
+        int[] callNode = new int[n];
+        int[] callEdge = new int[n];
+        int callSize = 0;
+        Arrays.fill(index, -1);
+        int nextIndex = 0;
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0)
+                continue;
+            index[root] = low[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            callNode[callSize] = root;
+            callEdge[callSize++] = snapshot.firstOut(root);
+            while (callSize > 0) {
+                int v = callNode[callSize - 1];
+                int e = callEdge[callSize - 1];
+                if (e < snapshot.endOut(v)) {
+                    callEdge[callSize - 1]++;
+                    int w = snapshot.outTarget(e);
+                    if (index[w] < 0) {
+                        index[w] = low[w] = nextIndex++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        callNode[callSize] = w;
+                        callEdge[callSize++] = snapshot.firstOut(w);
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                // every edge of v is done: v may close a component
+                callSize--;
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w] = false;
+                        component[w] = componentCount;
+                    } while (w != v);
+                    componentCount++;
+                }
+                if (callSize > 0) {
+                    int parent = callNode[callSize - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the distinct edges between components into the condensation DAG.
+     */
+    private void buildDag() {
+        long[] pairs = new long[snapshot.getEdgeCount()];
+        int count = 0;
+        for (int u = 0; u < snapshot.getNodeCount(); u++)
+            for (int e = snapshot.firstOut(u); e < snapshot.endOut(u); e++)
+                if (component[u] != component[snapshot.outTarget(e)])
+                    pairs[count++] = ((long) component[u] << 32) | component[snapshot.outTarget(e)];
+        Arrays.sort(pairs, 0, count);
+        dagStart = new int[componentCount + 1];
+        dagTarget = new int[count];
+        int edges = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && pairs[i] == pairs[i - 1])
+                continue;
+            dagStart[(int) (pairs[i] >>> 32) + 1]++;
+            dagTarget[edges++] = (int) pairs[i];
+        }
+        dagTarget = Arrays.copyOf(dagTarget, edges);
+        for (int c = 0; c < componentCount; c++)
+            dagStart[c + 1] += dagStart[c];
+    }
+
+    /**
+     * Labels every component with one interval per traversal: its rank in the
+     * traversal's post-order, and the lowest rank among the components it
+     * reaches. Each traversal visits children in a different random order,
+     * so the intervals rule out different unreachable pairs.
+     */
+    private void labelDag() {
+        lows = new int[TRAVERSALS][componentCount];
+        ranks = new int[TRAVERSALS][componentCount];
+        boolean[] hasParent = new boolean[componentCount];
+        for (int target : dagTarget)
+            hasParent[target] = true;
+        Random random = new Random(componentCount);
+        int[] callNode = new int[componentCount];
+        int[] callStep = new int[componentCount];
+        int[] rotation = new int[componentCount];
+        for (int t = 0; t < TRAVERSALS; t++) {
+            int[] lowT = lows[t];
+            int[] rankT = ranks[t];
+            Arrays.fill(rankT, -1);
+            for (int c = 0; c < componentCount; c++)
+                rotation[c] = random.nextInt(Integer.MAX_VALUE);
+            int nextRank = 0;
+            // the highest numbered components have no parents, so start there
+            for (int root = componentCount - 1; root >= 0; root--) {
+                if (hasParent[root] || rankT[root] >= 0)
+                    continue;
+                int callSize = 0;
+                callNode[callSize] = root;
+                callStep[callSize++] = 0;
+                lowT[root] = Integer.MAX_VALUE;
+                rankT[root] = -2; // visited but not yet ranked
+                while (callSize > 0) {
+                    int c = callNode[callSize - 1];
+                    int degree = dagStart[c + 1] - dagStart[c];
+                    int step = callStep[callSize - 1];
+                    if (step < degree) {
+                        callStep[callSize - 1]++;
+                        int child = dagTarget[dagStart[c] + (int) ((rotation[c] + (long) step) % degree)];
+                        if (rankT[child] == -1) {
+                            lowT[child] = Integer.MAX_VALUE;
+                            rankT[child] = -2;
+                            callNode[callSize] = child;
+                            callStep[callSize++] = 0;
+                        } else {
+                            lowT[c] = Math.min(lowT[c], lowT[child]);
+                        }
+                        continue;
+                    }
+                    callSize--;
+                    rankT[c] = nextRank++;
+                    lowT[c] = Math.min(lowT[c], rankT[c]);
+                    if (callSize > 0) {
+                        int parent = callNode[callSize - 1];
+                        lowT[parent] = Math.min(lowT[parent], lowT[c]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.ToDoubleBiFunction;
+
+/**
+ * This ScalingBenchmark class measures how loading and querying maps grows
+ * with their size. For every kind of generated map and every size, it writes
+ * a map with GraphGenerator, loads it with DotGraphLoader as ShortestPathApp
+ * does, and then builds each search engine over it and measures:
+ *
+ * - the time the engine takes to build, which for dijkstra is the load time
+ * - the heap the engine adds, measured after garbage collection
+ * - the latency of the same random shortest path queries, as percentiles
+ *
+ * The engines are the DijkstraGraph baseline (dijkstra), point-to-point
+ * searches over a CsrGraph snapshot (csr), DeltaSteppingSearch trees on the
+ * common fork-join pool (delta), an OffHeapGraph copy (offheap, whose off-heap
+ * records are not counted as heap), a HubLabelOracle (hub) and a
+ * SimplifiedGraph (simplified). Results are printed as one tab separated line
+ * per map and engine, along with the build time and heap per edge, which stay
+ * flat as maps grow unless something scales worse than linearly.
+ *
+ * Usage: java ScalingBenchmark [--sizes 1000,10000,...] [--types GRID,ROAD,...]
+ *                              [--engines dijkstra,csr,...] [--queries count]
+ *                              [--hub-max-nodes nodes] [--seed seed]
+ *
+ * The default sizes run up to 10^7 nodes. At most the snapshot and one other
+ * engine, or the loaded graph and the snapshot, are held at once, which for
+ * the 10^7 node maps peaks at about 10GB of heap, so run the defaults with
+ * java -Xmx16g ScalingBenchmark. Without that much memory, pass
+ * --sizes 1000,10000,100000,1000000, which fits in -Xmx4g. Hub labels are only
+ * built for maps of up to --hub-max-nodes nodes (10000 by default), since
+ * their size grows much faster than the map: 10^5 node maps need more than
+ * 4GB of labels.
+ */
+public class ScalingBenchmark {
+
+    private static final int[] DEFAULT_SIZES = { 1_000, 10_000, 100_000, 1_000_000, 10_000_000 };
+    private static final int DEFAULT_QUERIES = 100;
+    private static final int DEFAULT_HUB_MAX_NODES = 10_000;
+    private static final String[] ENGINES = { "dijkstra", "csr", "delta", "offheap", "hub", "simplified" };
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = DEFAULT_SIZES;
+        GraphGenerator.Type[] types = GraphGenerator.Type.values();
+        List<String> engines = Arrays.asList(ENGINES);
+        int queries = DEFAULT_QUERIES;
+        int hubMaxNodes = DEFAULT_HUB_MAX_NODES;
+        long seed = 1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+            case "--sizes":
+                sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                break;
+            case "--types":
+                types = Arrays.stream(args[i + 1].split(","))
+                        .map(type -> GraphGenerator.Type.valueOf(type.toUpperCase(Locale.ROOT)))
+                        .toArray(GraphGenerator.Type[]::new);
+                break;
+            case "--engines":
+                engines = Arrays.asList(args[i + 1].toLowerCase(Locale.ROOT).split(","));
+                if (!Arrays.asList(ENGINES).containsAll(engines))
+                    throw new IllegalArgumentException("unknown engine in " + args[i + 1]);
+                break;
+            case "--queries":
+                queries = Integer.parseInt(args[i + 1]);
+                break;
+            case "--hub-max-nodes":
+                hubMaxNodes = Integer.parseInt(args[i + 1]);
+                break;
+            case "--seed":
+                seed = Long.parseLong(args[i + 1]);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        System.out.println(String.join("\t", "type", "nodes", "edges", "fileMB", "engine", "buildMs",
+                "buildNsPerEdge", "heapMB", "heapBytesPerEdge", "p50Ms", "p90Ms", "p99Ms", "maxMs"));
+        for (GraphGenerator.Type type : types)
+            for (int size : sizes)
+                run(type, size, engines, queries, hubMaxNodes, seed);
+    }
+
+    /**
+     * Generates and loads one map, then builds and queries each engine over it
+     * in turn, printing one line per engine.
+     */
+    private static void run(GraphGenerator.Type type, int size, List<String> engines, int queries,
+            int hubMaxNodes, long seed) throws IOException {
+        Path file = Files.createTempFile("scaling-" + type.name().toLowerCase(Locale.ROOT) + "-" + size, ".dot");
+        try {
+            GraphGenerator.write(type, size, seed, file);
+            long fileBytes = Files.size(file);
+
+            long heapBefore = usedHeap();
+            long loadStart = System.nanoTime();
+            DijkstraGraph<String, Double> graph = DotGraphLoader.load(file.toString(),
+                    new UndirectedDijkstraGraph<String, Double>());
+            long[] loadCost = { System.nanoTime() - loadStart, usedHeap() - heapBefore };
+
+            // query the same random pairs of loaded nodes with every engine, including pairs with no path
+            List<String> names = new ArrayList<>(graph.keySet());
+            Random random = new Random(seed);
+            String[] starts = new String[queries];
+            String[] ends = new String[queries];
+            for (int q = 0; q < queries; q++) {
+                starts[q] = names.get(random.nextInt(names.size()));
+                ends[q] = names.get(random.nextInt(names.size()));
+            }
+
+            String map = String.join("\t", type.name(), Integer.toString(graph.getNodeCount()),
+                    Integer.toString(graph.getEdgeCount()), format(fileBytes / 1e6));
+            int edges = graph.getEdgeCount();
+            if (engines.contains("dijkstra"))
+                System.out.println(row(map, "dijkstra", edges, loadCost,
+                        query(graph::shortestPathCost, starts, ends)));
+            if (engines.size() == 1 && engines.contains("dijkstra"))
+                return;
+
+            // every other engine is built from one snapshot of the loaded graph, which is
+            // the build cost of csr; the loaded graph is dropped once the snapshot is taken
+            long[] cost = new long[2];
+            CsrGraph<String> snapshot = measureBuild(cost, graph, CsrGraph::of);
+            graph = null;
+            if (engines.contains("csr"))
+                System.out.println(row(map, "csr", edges, cost, query(
+                        (start, end) -> snapshot.shortestPath(snapshot.id(start), snapshot.id(end)).getCost(),
+                        starts, ends)));
+            if (engines.contains("delta")) {
+                DeltaSteppingSearch<String> delta = measureBuild(cost, snapshot, DeltaSteppingSearch::new);
+                System.out.println(row(map, "delta", edges, cost, query(
+                        (start, end) -> delta.shortestPathTree(start).cost(snapshot.id(end)), starts, ends)));
+            }
+            if (engines.contains("offheap")) {
+                try (OffHeapGraph<String> offHeap = measureBuild(cost, snapshot, ScalingBenchmark::offHeapCopy)) {
+                    System.out.println(row(map, "offheap", edges, cost,
+                            query(offHeap::shortestPathCost, starts, ends)));
+                }
+            }
+            if (engines.contains("hub") && snapshot.getNodeCount() <= hubMaxNodes) {
+                HubLabelOracle<String> hub = measureBuild(cost, snapshot,
+                        labelled -> HubLabelOracle.build(labelled, ForkJoinPool.commonPool()));
+                System.out.println(row(map, "hub", edges, cost, query(hub::shortestPathCost, starts, ends)));
+            }
+            if (engines.contains("simplified")) {
+                SimplifiedGraph<String> simplified = measureBuild(cost, snapshot, SimplifiedGraph::new);
+                System.out.println(row(map, "simplified", edges, cost,
+                        query(simplified::shortestPathCost, starts, ends)));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Builds an engine from a source graph, storing the nanoseconds it took and
+     * the heap it added in the two entries of cost.
+     */
+    private static <S, T> T measureBuild(long[] cost, S source, Function<S, T> builder) {
+        long heapBefore = usedHeap();
+        long buildStart = System.nanoTime();
+        T built = builder.apply(source);
+        cost[0] = System.nanoTime() - buildStart;
+        // engines that keep no state of their own can show up negative as earlier ones are freed
+        cost[1] = Math.max(0, usedHeap() - heapBefore);
+        return built;
+    }
+
+    /**
+     * Copies a snapshot into a heap-backed OffHeapGraph.
+     */
+    private static OffHeapGraph<String> offHeapCopy(CsrGraph<String> snapshot) {
+        OffHeapGraph<String> offHeap = new OffHeapGraph<>();
+        for (int u = 0; u < snapshot.getNodeCount(); u++)
+            offHeap.insertNode(snapshot.data(u));
+        for (int u = 0; u < snapshot.getNodeCount(); u++)
+            for (int e = snapshot.firstOut(u); e < snapshot.endOut(u); e++)
+                offHeap.insertEdge(snapshot.data(u), snapshot.data(snapshot.outTarget(e)), snapshot.outWeight(e));
+        return offHeap;
+    }
+
+    /**
+     * Times one query per pair of starts and ends.
+     *
+     * @return the sorted latencies in nanoseconds
+     */
+    private static long[] query(ToDoubleBiFunction<String, String> engine, String[] starts, String[] ends) {
+        long[] latencies = new long[starts.length];
+        for (int q = 0; q < starts.length; q++) {
+            long queryStart = System.nanoTime();
+            try {
+                engine.applyAsDouble(starts[q], ends[q]);
+            } catch (NoSuchElementException e) {
+                // unreachable pairs are timed like any other query
+            }
+            latencies[q] = System.nanoTime() - queryStart;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Returns the tab separated measurements of one engine over one map.
+     */
+    private static String row(String map, String engine, int edges, long[] cost, long[] latencies) {
+        return String.join("\t", map, engine, format(cost[0] / 1e6), format((double) cost[0] / edges),
+                format(cost[1] / 1e6), format((double) cost[1] / edges),
+                format(percentile(latencies, 0.50)), format(percentile(latencies, 0.90)),
+                format(percentile(latencies, 0.99)), format(percentile(latencies, 1.0)));
+    }
+
+    /**
+     * Returns a percentile of sorted latencies in milliseconds.
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0)
+            return 0.0;
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Returns the heap in use once garbage collection has settled.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // repeat until a collection frees nothing more
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used)
+                break;
+            used = now;
+        }
+        return used;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
@@ -1,19 +1,74 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.regex.*;
 import java.util.Arrays;
 import java.util.ArrayList;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.util.Scanner;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class ShortestPathApp{
 
+	//number of location names shown per page of search results
+	static final int SEARCH_PAGE_SIZE = 10;
+	//number of shortest path trees kept in the path cache
+	static final int PATH_CACHE_CAPACITY = 256;
+	//number of batch mode queries that are read and resolved together
+	static final int BATCH_CHUNK_SIZE = 8192;
+	//number of batch mode searches that run at once in parallel, which also bounds how many
+	//one-to-all search results are held in memory at once
+	static final int BATCH_PARALLEL_SEARCHES = Runtime.getRuntime().availableProcessors();
+
 	public static void main(String args[]) throws IOException {
 		//Read in the provided map file and save it as a Dijkstra graph
 		GraphADT<String,Double> walkPathGraphADT = loadGraphData("campus.dot");
 		DijkstraGraph<String,Double> walkPathDijkstraGraph = (DijkstraGraph<String,Double>) walkPathGraphADT;
+		//With --batch [file], answer every query in the file (or standard input) without the menu
+		List<String> argList = Arrays.asList(args);
+		int batchArg = argList.indexOf("--batch");
+		if (batchArg >= 0){
+			boolean hasFile = batchArg + 1 < args.length && !args[batchArg + 1].startsWith("--");
+			BufferedReader input = hasFile ? Files.newBufferedReader(Paths.get(args[batchArg + 1]),StandardCharsets.UTF_8)
+				: new BufferedReader(new InputStreamReader(System.in,StandardCharsets.UTF_8),1 << 16);
+			BufferedWriter output = new BufferedWriter(new OutputStreamWriter(System.out,StandardCharsets.UTF_8),1 << 16);
+			try {
+				runBatch(walkPathDijkstraGraph,input,output,!argList.contains("--sequential"));
+			} finally {
+				input.close();
+			}
+			return;
+		}
+		//Index the location names once so they can be searched by prefix or with typos
+		LocationIndex locationIndex = new LocationIndex(walkPathDijkstraGraph.keySet());
+		//Reload the path cache saved by the last run, unless campus.dot has changed since
+		Path cacheFile = Paths.get("campus.dot.cache");
+		long mapHash = PathCache.hashFile(Paths.get("campus.dot"));
+		PathCache<String> pathCache = new PathCache<String>(walkPathDijkstraGraph,PATH_CACHE_CAPACITY);
+		pathCache.load(cacheFile,mapHash);
+		//With --watch, apply changes to campus.dot to the graph while the app runs
+		ReadWriteLock graphLock = new ReentrantReadWriteLock();
+		MapFileWatcher mapFileWatcher = null;
+		if (argList.contains("--watch")){
+			mapFileWatcher = new MapFileWatcher(Paths.get("campus.dot"),walkPathDijkstraGraph,graphLock);
+			mapFileWatcher.start();
+		}
 		//Provide a menu for user to choose the applications and
 		//execute what the user chose to do. 
 		//Allow them to repeat the process till one choose to quit.
@@ -24,7 +79,8 @@ public class ShortestPathApp{
 		System.out.println("Welcome to iWalk Summer version!");
 		System.out.println("===================");
 		
-		runCommandLoop(walkPathDijkstraGraph);
+		//Save the path cache so the next run starts warm, however the app stops
+		runCommandLoop(walkPathDijkstraGraph, locationIndex, pathCache, graphLock, cacheFile, mapHash, mapFileWatcher);
 	
 		System.out.println();
 		System.out.println("===================");
@@ -37,6 +93,81 @@ public class ShortestPathApp{
      * they select Q to quit.
      */
     public static void runCommandLoop(DijkstraGraph<String,Double> walkPathDijkstraGraph) {
+	runCommandLoop(walkPathDijkstraGraph, new LocationIndex(walkPathDijkstraGraph.keySet()));
+    }
+
+    /**
+     * Repeated gives the user an opportunity to issue new commands until
+     * they select Q to quit, using the provided index to search location names.
+     */
+    public static void runCommandLoop(DijkstraGraph<String,Double> walkPathDijkstraGraph, LocationIndex locationIndex) {
+	runCommandLoop(walkPathDijkstraGraph, locationIndex, new PathCache<String>(walkPathDijkstraGraph,PATH_CACHE_CAPACITY));
+    }
+
+    /**
+     * Repeated gives the user an opportunity to issue new commands until
+     * they select Q to quit, answering path queries through the provided cache.
+     */
+    public static void runCommandLoop(DijkstraGraph<String,Double> walkPathDijkstraGraph, LocationIndex locationIndex, PathCache<String> pathCache) {
+	runCommandLoop(walkPathDijkstraGraph, locationIndex, pathCache, new ReentrantReadWriteLock());
+    }
+
+    /**
+     * Repeated gives the user an opportunity to issue new commands until
+     * they select Q to quit, then saves the path cache to cacheFile tagged
+     * with the map it was built from, so the next run starts warm. The cache
+     * is also saved when the loop ends with an exception, such as at the end
+     * of input, and from a shutdown hook when the process is stopped, for
+     * example by Ctrl-C; whichever comes first saves it.
+     *
+     * @param mapHash the hash of the map file, used unless mapFileWatcher is given
+     * @param mapFileWatcher the watcher reloading the map, which is closed before
+     *        saving and supplies the hash of the map last loaded, or null
+     * @throws IOException when the cache cannot be saved after the loop ends
+     */
+    public static void runCommandLoop(DijkstraGraph<String,Double> walkPathDijkstraGraph, LocationIndex locationIndex, PathCache<String> pathCache, ReadWriteLock graphLock,
+		Path cacheFile, long mapHash, MapFileWatcher mapFileWatcher) throws IOException {
+	AtomicBoolean saved = new AtomicBoolean();
+	Thread saveOnShutdown = new Thread(() -> {
+		try {
+			saveCache(saved,pathCache,cacheFile,mapHash,mapFileWatcher);
+		} catch (IOException e) {
+			System.err.println("Could not save the path cache: " + e.getMessage());
+		}
+	});
+	Runtime.getRuntime().addShutdownHook(saveOnShutdown);
+	try {
+		runCommandLoop(walkPathDijkstraGraph, locationIndex, pathCache, graphLock);
+	} finally {
+		try {
+			Runtime.getRuntime().removeShutdownHook(saveOnShutdown);
+		} catch (IllegalStateException e) {
+			//the process is already shutting down, and the hook saves the cache
+		}
+		saveCache(saved,pathCache,cacheFile,mapHash,mapFileWatcher);
+	}
+    }
+
+    //helper method to save the path cache unless it has been saved already
+    private static void saveCache(AtomicBoolean saved, PathCache<String> pathCache, Path cacheFile, long mapHash, MapFileWatcher mapFileWatcher) throws IOException {
+	if (!saved.compareAndSet(false,true)){
+		return;
+	}
+	if (mapFileWatcher != null){
+		mapFileWatcher.close();
+		mapHash = mapFileWatcher.getMapHash();
+	}
+	pathCache.save(cacheFile,mapHash);
+    }
+
+    /**
+     * Repeated gives the user an opportunity to issue new commands until
+     * they select Q to quit, holding the provided lock for reading while
+     * reading the graph, so that a map reload never changes it mid-query.
+     */
+    public static void runCommandLoop(DijkstraGraph<String,Double> walkPathDijkstraGraph, LocationIndex locationIndex, PathCache<String> pathCache, ReadWriteLock graphLock) {
+	//the graph version the location index was built for
+	long indexedVersion = walkPathDijkstraGraph.getVersion();
 	//while loop allows user to make selection until quit is chosen
 	String inputString = new String();
 	Scanner reader = new Scanner(System.in);
@@ -45,13 +176,55 @@ public class ShortestPathApp{
     	
 		inputString = reader.nextLine();
 		//System.out.println("You entered " + inputString);
+		if (inputString.isEmpty()){
+			System.out.println("Please enter a valid input from the menu options.");
+			continue;
+		}
 		//(1) get list of all locations in the map read in
 		if (inputString.toLowerCase().charAt(0) == 'g'){
-			List<String> nodeList = getListOfAllLocations(walkPathDijkstraGraph);
+			List<String> nodeList;
+			graphLock.readLock().lock();
+			try {
+				nodeList = getListOfAllLocations(walkPathDijkstraGraph);
+			} finally {
+				graphLock.readLock().unlock();
+			}
 			//print out node names
 			System.out.println(nodeList.toString());
 			continue;
 		}
+		//search location names by prefix, allowing for typos
+		else if (inputString.toLowerCase().charAt(0) == 's'){
+			String query = reader.nextLine();
+			//rebuild the index when a map reload has changed the graph
+			graphLock.readLock().lock();
+			try {
+				if (indexedVersion != walkPathDijkstraGraph.getVersion()){
+					locationIndex = new LocationIndex(walkPathDijkstraGraph.keySet());
+					indexedVersion = walkPathDijkstraGraph.getVersion();
+				}
+			} finally {
+				graphLock.readLock().unlock();
+			}
+			List<String> matches = locationIndex.search(query,0,SEARCH_PAGE_SIZE);
+			if (matches.isEmpty()){
+				System.out.println("No matching locations found.");
+			}
+			for (int page = 1; !matches.isEmpty(); page++){
+				System.out.println(matches.toString());
+				//only offer another page when this one was full
+				if (matches.size() < SEARCH_PAGE_SIZE){
+					break;
+				}
+				System.out.println("Press [N] for more results, or any other key to return to the menu.");
+				String more = reader.nextLine();
+				if (more.isEmpty() || more.toLowerCase().charAt(0) != 'n'){
+					break;
+				}
+				matches = locationIndex.search(query,page*SEARCH_PAGE_SIZE,SEARCH_PAGE_SIZE);
+			}
+			continue;
+		}
 		//(2) find the shortest path for any given starting and ending location
 		//(print out the path)
 		else if (inputString.toLowerCase().charAt(0) == 'f'){
@@ -67,14 +240,25 @@ public class ShortestPathApp{
 			String end = rangeString.substring(separator+2,rangeString.length()).trim();
 			
 			//call the shortestPathData method and print out the results
-			if (walkPathDijkstraGraph.containsNode(start) == false || walkPathDijkstraGraph.containsNode(end) == false){
-				System.out.println("Invalid input(s). Please try again.");
-			}
-			else {
-				List<String> pathList = findShortestPath(walkPathDijkstraGraph,start,end);
-				//System.out.println("Results: ");
-				System.out.println(pathList.toString());
-				continue;
+			graphLock.readLock().lock();
+			try {
+				if (walkPathDijkstraGraph.containsNode(start) == false || walkPathDijkstraGraph.containsNode(end) == false){
+					System.out.println("Invalid input(s). Please try again.");
+					//suggest the closest known names for whichever location was not found
+					String startSuggestion = walkPathDijkstraGraph.containsNode(start) ? start : locationIndex.bestMatch(start);
+					String endSuggestion = walkPathDijkstraGraph.containsNode(end) ? end : locationIndex.bestMatch(end);
+					if (startSuggestion != null && endSuggestion != null){
+						System.out.println("Did you mean: " + startSuggestion + " -> " + endSuggestion);
+					}
+				}
+				else {
+					List<String> pathList = findShortestPath(pathCache,start,end);
+					//System.out.println("Results: ");
+					System.out.println(pathList.toString());
+					continue;
+				}
+			} finally {
+				graphLock.readLock().unlock();
 			}
 		}
 		//(3) quit
@@ -87,6 +271,145 @@ public class ShortestPathApp{
 		}
 	}
     }
+    /**
+     * Answers every "start -> end" query line read from input, and writes one
+     * result line per query to output in the same order. Result lines hold
+     * tab separated fields in one of these forms:
+     *
+     *   OK    start  end  cost  path (the locations joined by " -> ")
+     *   ERR   E_PARSE             line
+     *   ERR   E_UNKNOWN_LOCATION  start  end
+     *   ERR   E_NO_PATH           start  end
+     *
+     * Blank lines are skipped. Queries are read in chunks and grouped by their
+     * starting location. A location starting several queries of a chunk gets
+     * one search to every location, which is dropped as soon as those queries
+     * are answered; a location starting a single query gets a search that
+     * stops once the query's end is reached.
+     *
+     * @param graph of the map
+     * @param input to read query lines from
+     * @param output to write result lines to
+     * @param parallel whether to run up to BATCH_PARALLEL_SEARCHES searches at once
+     * @throws IOException when there is trouble reading input or writing output
+     */
+	public static void runBatch(DijkstraGraph<String,Double> graph, BufferedReader input, BufferedWriter output, boolean parallel) throws IOException {
+		CsrGraph<String> snapshot = CsrGraph.of(graph);
+		ExecutorService searches = parallel ? Executors.newFixedThreadPool(BATCH_PARALLEL_SEARCHES) : null;
+		try {
+			List<String> lines = new ArrayList<String>(BATCH_CHUNK_SIZE);
+			for (String line = input.readLine(); line != null; line = input.readLine()){
+				if (line.trim().isEmpty()){
+					continue;
+				}
+				lines.add(line);
+				if (lines.size() == BATCH_CHUNK_SIZE){
+					resolveBatch(snapshot,lines,output,searches);
+					lines.clear();
+				}
+			}
+			resolveBatch(snapshot,lines,output,searches);
+			output.flush();
+		} finally {
+			if (searches != null){
+				searches.shutdown();
+			}
+		}
+	}
+
+    //helper method to resolve one chunk of batch queries and write their results in order
+    private static void resolveBatch(CsrGraph<String> snapshot, List<String> lines, BufferedWriter output, ExecutorService searches) throws IOException {
+	int count = lines.size();
+	String[] results = new String[count];
+	String[] ends = new String[count];
+	//answer malformed lines and unknown locations right away, and group the rest by starting location
+	Map<String,List<Integer>> queriesByStart = new LinkedHashMap<String,List<Integer>>();
+	for (int i = 0; i < count; i++){
+		String line = lines.get(i);
+		int separator = line.indexOf("->");
+		String start = separator == -1 ? "" : line.substring(0,separator).trim();
+		String end = separator == -1 ? "" : line.substring(separator+2).trim();
+		if (start.isEmpty() || end.isEmpty()){
+			results[i] = "ERR\tE_PARSE\t" + line.replace('\t',' ');
+		}
+		else if (!snapshot.containsNode(start) || !snapshot.containsNode(end)){
+			results[i] = "ERR\tE_UNKNOWN_LOCATION\t" + start + "\t" + end;
+		}
+		else {
+			ends[i] = end;
+			queriesByStart.computeIfAbsent(start,key -> new ArrayList<Integer>()).add(i);
+		}
+	}
+	//each group fills in the results of its own queries
+	List<Callable<Void>> groups = new ArrayList<Callable<Void>>(queriesByStart.size());
+	for (Map.Entry<String,List<Integer>> group : queriesByStart.entrySet()){
+		groups.add(() -> {
+			resolveStart(snapshot,group.getKey(),group.getValue(),ends,results);
+			return null;
+		});
+	}
+	try {
+		if (searches == null){
+			for (Callable<Void> group : groups){
+				group.call();
+			}
+		}
+		else {
+			for (Future<Void> done : searches.invokeAll(groups)){
+				done.get();
+			}
+		}
+	} catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new IOException("interrupted while resolving batch queries",e);
+	} catch (Exception e) {
+		Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+		if (cause instanceof RuntimeException){
+			throw (RuntimeException) cause;
+		}
+		throw new IOException("could not resolve batch queries",cause);
+	}
+	for (String result : results){
+		output.write(result);
+		output.newLine();
+	}
+    }
+
+    //helper method to resolve the batch queries leaving one location, holding a one-to-all
+    //search only while its queries are being formatted
+    private static void resolveStart(CsrGraph<String> snapshot, String start, List<Integer> queries, String[] ends, String[] results) {
+	int startId = snapshot.id(start);
+	if (queries.size() == 1){
+		int query = queries.get(0);
+		PathResult<String> pathResult;
+		try {
+			pathResult = snapshot.shortestPath(startId,snapshot.id(ends[query]));
+		} catch (NoSuchElementException e) {
+			pathResult = null;
+		}
+		results[query] = batchResult(start,ends[query],pathResult);
+		return;
+	}
+	ShortestPathTree<String> tree = snapshot.shortestPathTree(startId);
+	for (int query : queries){
+		int endId = snapshot.id(ends[query]);
+		results[query] = batchResult(start,ends[query],tree.reaches(endId) ? tree.pathResult(endId) : null);
+	}
+    }
+
+    //helper method to format the result line of one batch query, given its path or null when there is none
+    private static String batchResult(String start, String end, PathResult<String> pathResult) {
+	if (pathResult == null){
+		return "ERR\tE_NO_PATH\t" + start + "\t" + end;
+	}
+	StringBuilder result = new StringBuilder("OK\t").append(start).append('\t').append(end).append('\t').append(pathResult.getCost()).append('\t');
+	List<String> path = pathResult.getPath();
+	for (int i = 0; i < path.size(); i++){
+		result.append(i == 0 ? "" : " -> ").append(path.get(i));
+	}
+	return result.toString();
+    }
+
     	/**
      	* Displays the menu of command options to the user.
      	* 
@@ -96,11 +419,13 @@ public class ShortestPathApp{
 	/*    
 		~~~ Command Menu ~~~
 	        [G]et list of all possible locations
+		[S]earch locations by name
 		[F]ind shortest path for any given starting and ending location start -> end
 	        [Q]uit
 	 */
 		System.out.println("~~~ Command Menu ~~~");
 		System.out.println("[G]et list of all possible locations");
+		System.out.println("[S]earch locations by name");
 		System.out.println("[F]ind shortest path for any given starting and ending location start -> end");
 		System.out.println("[Q]uit");
     	}
@@ -114,73 +439,13 @@ public class ShortestPathApp{
      * @throws IOException when there is trouble finding/reading file
      */
 	public static GraphADT loadGraphData(String filename) throws IOException {
-		DijkstraGraph<String,Double> walkPathDijkstraGraph = new DijkstraGraph<String,Double>();
-		//Read in the records in the campus.dot file
-		//and store them in a dijkstraGraph
-		BufferedReader br = new BufferedReader(new FileReader(filename));
-		int k=0; //so we can exclude header row
-		String line = "";
-		while ((line = br.readLine()) != null){
-			//skip header row
-			if (k==0) {
-				k++;
-				continue;
-			}
-			//skip footer row
-			else if (line.equals("}")){
-				continue;
-			}
-			//System.out.println("reading... " + line);
-			ArrayList<String> dotLine = lineSplit(line);
-			String start = dotLine.get(0);
-			String end = dotLine.get(1);
-			Double time = Double.valueOf(dotLine.get(2));
-			//if start node is not already in the graph, insert it
-			if (walkPathDijkstraGraph.containsNode(start)==false){
-				walkPathDijkstraGraph.insertNode(start);
-			}
-			//if end node is not already in the graph, insert it
-			if (walkPathDijkstraGraph.containsNode(end)==false){
-				walkPathDijkstraGraph.insertNode(end);
-			}
-			//if there is not already an edge connecting these nodes, insert the edge
-			if (walkPathDijkstraGraph.containsEdge(start,end)==false){
-				walkPathDijkstraGraph.insertEdge(start,end,time);
-			}
-			//if opposite-direction edge is not already in the graph, insert it (because this graph is undirected)
-			if (walkPathDijkstraGraph.containsEdge(end,start)==false){
-				walkPathDijkstraGraph.insertEdge(end,start,time);
-			}
-			//System.out.println("number of rows inserted: " + Integer.toString(k));
-			k++; //count number of rows imported
-		}
-  	
+		//Read in the records in the campus.dot file in parallel chunks
+		//and store them in a dijkstraGraph (see DotGraphLoader)
+		//the walkways are undirected, so each one is stored as a single edge
+		DijkstraGraph<String,Double> walkPathDijkstraGraph = DotGraphLoader.load(filename, new UndirectedDijkstraGraph<String,Double>());
 	return walkPathDijkstraGraph;
 	}
 
-    //helper method to parse dot string
-    public static ArrayList<String> lineSplit(String inString){
-	//System.out.println("string to parse: ~" + inString + "~");
-
-	//get start node
-	Pattern nodePattern = Pattern.compile("\"([^\"]*)\"");
-	Matcher nodeMatcher = nodePattern.matcher(inString);
-	nodeMatcher.find();
-	String start = nodeMatcher.group(1);	
-	//get end node
-	nodeMatcher.find();
-	String end = nodeMatcher.group(1);
-	//get time
-	Pattern edgePattern = Pattern.compile("\\[seconds=([^]]*)\\]");
-	Matcher edgeMatcher = edgePattern.matcher(inString);
-	edgeMatcher.find();
-	String time = edgeMatcher.group(1);
-	//add strings to list
-	ArrayList<String> lineList = new ArrayList<String>(Arrays.asList(start,end,time));
-	//System.out.println("line list length: " + Integer.toString(lineList.size()));
-	return lineList;
-    }
-
     /**
      * Return the list of all locations in a map 
      *
@@ -210,9 +475,21 @@ public class ShortestPathApp{
 		GraphADT<String,Double> walkPathGraphADT = map;
 		DijkstraGraph<String,Double> walkPathDijkstraGraph = (DijkstraGraph<String,Double>) walkPathGraphADT;
 		//get shortest path
-		List<String> pathList = walkPathDijkstraGraph.shortestPathData(startLocation,endLocation);
+		List<String> pathList = walkPathDijkstraGraph.shortestPath(startLocation,endLocation).getPath();
   		return pathList;
 	}
 
+    /**
+     * Return the list of all locations in a shortest path for given start and end locations,
+     * reusing the shortest path tree of an earlier query from the same start when cached
+     *
+     * @param cache of shortest path trees over the map
+     * @param starting location
+     * @param ending location
+     * @return the list of locations on the shortest path from start to end 
+     */
+	public static List<String> findShortestPath(PathCache<String> cache, String startLocation, String endLocation) {
+		return cache.shortestPath(startLocation,endLocation).getPath();
+	}
 
 }
@@ -0,0 +1,125 @@
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A ShortestPathTree holds the result of a one-to-all search over a CsrGraph:
+ * the cost of the shortest path from the source to every node, and the
+ * predecessor of every reached node along its shortest path. Nodes that cannot
+ * be reached from the source have an infinite cost and no predecessor.
+ */
+public class ShortestPathTree<NodeType> {
+
+    // predecessor value for the source and for unreached nodes
+    public static final int NONE = -1;
+
+    private final CsrGraph<NodeType> graph;
+    private final int source;
+    private final double[] cost;
+    private final int[] pred;
+
+    /**
+     * Creates a tree from the arrays computed by a search.
+     *
+     * @param graph  the graph that was searched
+     * @param source the id of the node the search started from
+     * @param cost   the shortest path cost to each node, indexed by id
+     * @param pred   the predecessor of each node along its shortest path
+     */
+    public ShortestPathTree(CsrGraph<NodeType> graph, int source, double[] cost, int[] pred) {
+        this.graph = graph;
+        this.source = source;
+        this.cost = cost;
+        this.pred = pred;
+    }
+
+    /** @return the id of the node this tree starts from */
+    public int getSource() {
+        return source;
+    }
+
+    /** @return the graph this tree was computed over */
+    public CsrGraph<NodeType> getGraph() {
+        return graph;
+    }
+
+    /**
+     * Checks whether the source can reach a node.
+     *
+     * @param target the id of the node to check
+     * @return true if some path leads from the source to target
+     */
+    public boolean reaches(int target) {
+        return cost[target] != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the cost of the shortest path from the source to a node.
+     *
+     * @param target the id of the destination node
+     * @return the cost of that path, or infinity when target is unreachable
+     */
+    public double cost(int target) {
+        return cost[target];
+    }
+
+    /**
+     * Returns the predecessor of a node along its shortest path.
+     *
+     * @param target the id of the node
+     * @return the id of its predecessor, or NONE for the source and for
+     *         unreachable nodes
+     */
+    public int predecessor(int target) {
+        return pred[target];
+    }
+
+    /**
+     * Returns the ids of the nodes along the shortest path to a node.
+     *
+     * @param target the id of the destination node
+     * @return the node ids from the source through target
+     * @throws NoSuchElementException when target cannot be reached
+     */
+    public int[] pathIds(int target) {
+        if (!reaches(target))
+            throw new NoSuchElementException("no path exists between start and end nodes");
+        int hops = 0;
+        for (int id = target; id != source; id = pred[id])
+            hops++;
+        int[] path = new int[hops + 1];
+        for (int id = target, i = hops; i >= 0; id = pred[id], i--)
+            path[i] = id;
+        return path;
+    }
+
+    /**
+     * Returns the cost, node ids and node data along the shortest path to a
+     * node. Node ids are ids in this tree's graph.
+     *
+     * @param target the id of the destination node
+     * @return the path to target
+     * @throws NoSuchElementException when target cannot be reached
+     */
+    public PathResult<NodeType> pathResult(int target) {
+        int[] path = pathIds(target);
+        double[] legCosts = new double[path.length - 1];
+        for (int i = 0; i < legCosts.length; i++)
+            legCosts[i] = graph.edgeWeight(path[i], path[i + 1]);
+        return new PathResult<>(path, legCosts, graph::data);
+    }
+
+    /**
+     * Returns the data of the nodes along the shortest path to a node.
+     *
+     * @param target the id of the destination node
+     * @return list of node data from the source through target
+     * @throws NoSuchElementException when target cannot be reached
+     */
+    public List<NodeType> pathData(int target) {
+        List<NodeType> path = new LinkedList<>();
+        for (int id : pathIds(target))
+            path.add(graph.data(id));
+        return path;
+    }
+}
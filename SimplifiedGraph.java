@@ -0,0 +1,497 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This SimplifiedGraph class answers shortest path queries over a smaller
+ * search graph derived from a snapshot of a DijkstraGraph, and expands every
+ * answer back to the nodes of the original graph. Two passes shrink the graph:
+ *
+ * - nodes joined by zero-weight edges in both directions are merged into one
+ *   cluster, since moving between them costs nothing
+ * - clusters that only connect two neighbours, with edges both ways to each,
+ *   form chains; each chain is replaced by one shortcut edge per direction
+ *   between the clusters at its ends, which remembers the chain it replaces
+ *
+ * Only the clusters left after both passes are searched. Queries that start or
+ * end inside a chain enter the search from both ends of that chain. Answers
+ * have the same cost as a search over the original graph.
+ */
+public class SimplifiedGraph<NodeType> {
+
+    private final CsrGraph<NodeType> graph;
+
+    // the cluster of every original node
+    private final int[] cluster;
+    private final int clusterCount;
+
+    // one edge per ordered pair of clusters, with the cheapest original edge
+    private int clusterEdgeCount = 0;
+    private final int[] clusterEdgeOrigFrom;
+    private final int[] clusterEdgeOrigTo;
+    private final double[] clusterEdgeWeight;
+    private final HashMap<Long, Integer> clusterEdgeByPair = new HashMap<>();
+
+    // every chain as its sequence of clusters, including the two end clusters,
+    // and the chain and position in that sequence of each cluster inside one
+    private final List<int[]> chains = new ArrayList<>();
+    private final int[] chainOf;
+    private final int[] chainPosition;
+
+    // the edges of the search graph by source cluster; an edge refers either to
+    // a cluster edge (ref >= 0) or to a chain walked in one direction
+    // (ref = -1 - 2 * chain for forwards, -2 - 2 * chain for backwards)
+    private final int[] searchStart;
+    private final int[] searchTarget;
+    private final double[] searchWeight;
+    private final int[] searchRef;
+    private final int searchNodeCount;
+
+    /**
+     * Simplifies a snapshot of a graph.
+     *
+     * @param graph the graph to answer queries over
+     */
+    public SimplifiedGraph(DijkstraGraph<NodeType, ? extends Number> graph) {
+        this(CsrGraph.of(graph));
+    }
+
+    /**
+     * Simplifies a graph snapshot.
+     *
+     * @param graph the graph to answer queries over
+     */
+    public SimplifiedGraph(CsrGraph<NodeType> graph) {
+        this.graph = graph;
+        int n = graph.getNodeCount();
+
+        // merge nodes joined by zero-weight edges in both directions
+        int[] parent = new int[n];
+        for (int u = 0; u < n; u++)
+            parent[u] = u;
+        for (int u = 0; u < n; u++)
+            for (int e = graph.firstOut(u); e < graph.endOut(u); e++)
+                if (graph.outWeight(e) == 0.0 && graph.outTarget(e) != u && hasZeroEdge(graph.outTarget(e), u))
+                    parent[find(parent, u)] = find(parent, graph.outTarget(e));
+        this.cluster = new int[n];
+        int[] clusterOfRoot = new int[n];
+        Arrays.fill(clusterOfRoot, -1);
+        int clusters = 0;
+        for (int u = 0; u < n; u++) {
+            int root = find(parent, u);
+            if (clusterOfRoot[root] < 0)
+                clusterOfRoot[root] = clusters++;
+            cluster[u] = clusterOfRoot[root];
+        }
+        this.clusterCount = clusters;
+
+        // keep the cheapest original edge between every ordered pair of clusters
+        this.clusterEdgeOrigFrom = new int[graph.getEdgeCount()];
+        this.clusterEdgeOrigTo = new int[graph.getEdgeCount()];
+        this.clusterEdgeWeight = new double[graph.getEdgeCount()];
+        int[] clusterEdgeFrom = new int[graph.getEdgeCount()];
+        int[] clusterEdgeTo = new int[graph.getEdgeCount()];
+        for (int u = 0; u < n; u++) {
+            for (int e = graph.firstOut(u); e < graph.endOut(u); e++) {
+                int v = graph.outTarget(e);
+                if (cluster[u] == cluster[v])
+                    continue;
+                Integer existing = clusterEdgeByPair.get(pair(cluster[u], cluster[v]));
+                int edge = existing == null ? clusterEdgeCount++ : existing;
+                if (existing == null || graph.outWeight(e) < clusterEdgeWeight[edge]) {
+                    clusterEdgeFrom[edge] = cluster[u];
+                    clusterEdgeTo[edge] = cluster[v];
+                    clusterEdgeOrigFrom[edge] = u;
+                    clusterEdgeOrigTo[edge] = v;
+                    clusterEdgeWeight[edge] = graph.outWeight(e);
+                    clusterEdgeByPair.put(pair(cluster[u], cluster[v]), edge);
+                }
+            }
+        }
+
+        // find the two neighbours of clusters that pass straight through
+        int[] outDegree = new int[clusters];
+        int[] inDegree = new int[clusters];
+        int[][] neighbours = new int[clusters][2];
+        for (int edge = 0; edge < clusterEdgeCount; edge++) {
+            int from = clusterEdgeFrom[edge];
+            if (outDegree[from] < 2)
+                neighbours[from][outDegree[from]] = clusterEdgeTo[edge];
+            outDegree[from]++;
+            inDegree[clusterEdgeTo[edge]]++;
+        }
+        boolean[] passThrough = new boolean[clusters];
+        for (int c = 0; c < clusters; c++)
+            passThrough[c] = outDegree[c] == 2 && inDegree[c] == 2
+                    && clusterEdgeByPair.containsKey(pair(neighbours[c][0], c))
+                    && clusterEdgeByPair.containsKey(pair(neighbours[c][1], c));
+
+        // collect chains by walking from each pass-through cluster to both ends
+        this.chainOf = new int[clusters];
+        this.chainPosition = new int[clusters];
+        Arrays.fill(chainOf, -1);
+        for (int c = 0; c < clusters; c++) {
+            if (!passThrough[c] || chainOf[c] >= 0)
+                continue;
+            List<Integer> before = walk(c, neighbours[c][0], passThrough, neighbours);
+            if (before == null) {
+                // a cycle of pass-through clusters has no ends to connect, so
+                // its clusters are searched like any other
+                for (int member = c, previous = neighbours[c][1]; passThrough[member];) {
+                    passThrough[member] = false;
+                    int next = neighbours[member][0] == previous ? neighbours[member][1] : neighbours[member][0];
+                    previous = member;
+                    member = next;
+                }
+                continue;
+            }
+            List<Integer> after = walk(c, neighbours[c][1], passThrough, neighbours);
+            int[] sequence = new int[before.size() + 1 + after.size()];
+            int length = 0;
+            for (int i = before.size() - 1; i >= 0; i--)
+                sequence[length++] = before.get(i);
+            sequence[length++] = c;
+            for (int member : after)
+                sequence[length++] = member;
+            for (int i = 1; i < sequence.length - 1; i++) {
+                chainOf[sequence[i]] = chains.size();
+                chainPosition[sequence[i]] = i;
+            }
+            chains.add(sequence);
+        }
+
+        // build the search graph from the remaining cluster edges and shortcuts
+        List<int[]> edges = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        for (int edge = 0; edge < clusterEdgeCount; edge++) {
+            if (!passThrough[clusterEdgeFrom[edge]] && !passThrough[clusterEdgeTo[edge]]) {
+                edges.add(new int[] { clusterEdgeFrom[edge], clusterEdgeTo[edge], edge });
+                weights.add(clusterEdgeWeight[edge]);
+            }
+        }
+        for (int chain = 0; chain < chains.size(); chain++) {
+            int[] sequence = chains.get(chain);
+            int last = sequence.length - 1;
+            // a chain that leaves and returns to the same cluster is no shortcut
+            if (sequence[0] == sequence[last])
+                continue;
+            edges.add(new int[] { sequence[0], sequence[last], -1 - 2 * chain });
+            weights.add(chainCost(chain, 0, last));
+            edges.add(new int[] { sequence[last], sequence[0], -2 - 2 * chain });
+            weights.add(chainCost(chain, last, 0));
+        }
+        this.searchStart = new int[clusters + 1];
+        for (int[] edge : edges)
+            searchStart[edge[0] + 1]++;
+        for (int c = 0; c < clusters; c++)
+            searchStart[c + 1] += searchStart[c];
+        this.searchTarget = new int[edges.size()];
+        this.searchWeight = new double[edges.size()];
+        this.searchRef = new int[edges.size()];
+        int[] fill = Arrays.copyOf(searchStart, clusters);
+        for (int i = 0; i < edges.size(); i++) {
+            int slot = fill[edges.get(i)[0]]++;
+            searchTarget[slot] = edges.get(i)[1];
+            searchWeight[slot] = weights.get(i);
+            searchRef[slot] = edges.get(i)[2];
+        }
+        int searched = 0;
+        for (int c = 0; c < clusters; c++)
+            if (!passThrough[c])
+                searched++;
+        this.searchNodeCount = searched;
+    }
+
+    /**
+     * Returns the number of nodes in the simplified graph that queries search.
+     *
+     * @return the number of searched nodes
+     */
+    public int getNodeCount() {
+        return searchNodeCount;
+    }
+
+    /**
+     * Returns the number of edges in the simplified graph that queries search.
+     *
+     * @return the number of searched edges
+     */
+    public int getEdgeCount() {
+        return searchTarget.length;
+    }
+
+    /**
+     * Returns the list of data values from nodes of the original graph along
+     * the shortest path from the node with the provided start value through
+     * the node with the provided end value.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return list of data item from node along this shortest path
+     * @throws NoSuchElementException when no path from start to end
+     *         is found or when either start or end is not in the graph
+     */
+    public List<NodeType> shortestPathData(NodeType start, NodeType end) {
+        int startId = graph.id(start);
+        int endId = graph.id(end);
+        List<NodeType> path = new ArrayList<>();
+        for (int id : expand(startId, endId, route(startId, endId)))
+            path.add(graph.data(id));
+        return path;
+    }
+
+    /**
+     * Returns the cost of the shortest path from the node containing the start
+     * data to the node containing the end data.
+     *
+     * @param start the data item in the starting node for the path
+     * @param end   the data item in the destination node for the path
+     * @return the cost of the shortest path between these nodes
+     * @throws NoSuchElementException when no path from start to end
+     *         is found or when either start or end is not in the graph
+     */
+    public double shortestPathCost(NodeType start, NodeType end) {
+        int startId = graph.id(start);
+        int endId = graph.id(end);
+        double cost = 0.0;
+        for (int edge : route(startId, endId))
+            cost += clusterEdgeWeight[edge];
+        return cost;
+    }
+
+    /**
+     * Finds the cheapest route between two original nodes as the list of
+     * cluster edges it follows.
+     */
+    private List<Integer> route(int startId, int endId) {
+        int startCluster = cluster[startId];
+        int endCluster = cluster[endId];
+        List<Integer> route = new ArrayList<>();
+        if (startCluster == endCluster)
+            return route;
+        int startChain = chainOf[startCluster];
+        int endChain = chainOf[endCluster];
+
+        // a start inside a chain enters the search at both ends of the chain
+        double[] cost = new double[clusterCount];
+        int[] predecessor = new int[clusterCount];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        Arrays.fill(predecessor, -1);
+        NodeHeap queue = new NodeHeap(16);
+        if (startChain < 0) {
+            cost[startCluster] = 0.0;
+            queue.add(startCluster, 0.0);
+        } else {
+            int[] sequence = chains.get(startChain);
+            for (int end : new int[] { 0, sequence.length - 1 }) {
+                double seed = chainCost(startChain, chainPosition[startCluster], end);
+                if (seed < cost[sequence[end]]) {
+                    cost[sequence[end]] = seed;
+                    queue.add(sequence[end], seed);
+                }
+            }
+        }
+
+        // an end inside a chain is reached from either end of the chain, or
+        // directly along the chain when the start is inside the same chain
+        double best = Double.POSITIVE_INFINITY;
+        int bestTarget = -1;
+        if (endChain >= 0 && endChain == startChain) {
+            best = chainCost(startChain, chainPosition[startCluster], chainPosition[endCluster]);
+            bestTarget = -2;
+        }
+        while (!queue.isEmpty()) {
+            int u = queue.peekNode();
+            double reached = queue.peekCost();
+            queue.remove();
+            if (reached > cost[u])
+                continue;
+            if (reached >= best)
+                break;
+            if (u == endCluster) {
+                best = reached;
+                bestTarget = u;
+                break;
+            }
+            if (endChain >= 0) {
+                int[] sequence = chains.get(endChain);
+                for (int end : new int[] { 0, sequence.length - 1 }) {
+                    if (sequence[end] == u && reached + chainCost(endChain, end, chainPosition[endCluster]) < best) {
+                        best = reached + chainCost(endChain, end, chainPosition[endCluster]);
+                        bestTarget = u;
+                    }
+                }
+            }
+            for (int e = searchStart[u]; e < searchStart[u + 1]; e++) {
+                int v = searchTarget[e];
+                if (reached + searchWeight[e] < cost[v]) {
+                    cost[v] = reached + searchWeight[e];
+                    predecessor[v] = e;
+                    queue.add(v, cost[v]);
+                }
+            }
+        }
+        if (bestTarget == -1)
+            throw new NoSuchElementException("no path exists between start and end nodes");
+        if (bestTarget == -2) {
+            addChainEdges(startChain, chainPosition[startCluster], chainPosition[endCluster], route);
+            return route;
+        }
+
+        // walk back through the search graph, then expand its edges in order
+        List<Integer> searchEdges = new ArrayList<>();
+        int root = bestTarget;
+        for (; predecessor[root] >= 0; root = sourceOf(predecessor[root]))
+            searchEdges.add(predecessor[root]);
+        if (startChain >= 0) {
+            int[] sequence = chains.get(startChain);
+            int last = sequence.length - 1;
+            int position = chainPosition[startCluster];
+            boolean toFirst = sequence[0] == root && (sequence[last] != root
+                    || chainCost(startChain, position, 0) <= chainCost(startChain, position, last));
+            addChainEdges(startChain, position, toFirst ? 0 : last, route);
+        }
+        for (int i = searchEdges.size() - 1; i >= 0; i--) {
+            int ref = searchRef[searchEdges.get(i)];
+            if (ref >= 0) {
+                route.add(ref);
+            } else {
+                int chain = (-1 - ref) / 2;
+                int last = chains.get(chain).length - 1;
+                boolean forwards = (-1 - ref) % 2 == 0;
+                addChainEdges(chain, forwards ? 0 : last, forwards ? last : 0, route);
+            }
+        }
+        if (bestTarget != endCluster) {
+            int[] sequence = chains.get(endChain);
+            int last = sequence.length - 1;
+            int position = chainPosition[endCluster];
+            boolean fromFirst = sequence[0] == bestTarget && (sequence[last] != bestTarget
+                    || chainCost(endChain, 0, position) <= chainCost(endChain, last, position));
+            addChainEdges(endChain, fromFirst ? 0 : last, position, route);
+        }
+        return route;
+    }
+
+    /**
+     * Expands a route of cluster edges into the original nodes along it,
+     * adding the zero-cost steps taken inside each cluster.
+     */
+    private List<Integer> expand(int startId, int endId, List<Integer> route) {
+        List<Integer> path = new ArrayList<>();
+        path.add(startId);
+        int current = startId;
+        for (int edge : route) {
+            addZeroPath(current, clusterEdgeOrigFrom[edge], path);
+            path.add(clusterEdgeOrigTo[edge]);
+            current = clusterEdgeOrigTo[edge];
+        }
+        addZeroPath(current, endId, path);
+        return path;
+    }
+
+    /**
+     * Adds the nodes after from along a path of zero-weight edges to to, both
+     * in the same cluster, found with a breadth first search of that cluster.
+     */
+    private void addZeroPath(int from, int to, List<Integer> path) {
+        if (from == to)
+            return;
+        HashMap<Integer, Integer> reachedFrom = new HashMap<>();
+        ArrayDeque<Integer> frontier = new ArrayDeque<>();
+        reachedFrom.put(from, from);
+        frontier.add(from);
+        while (!frontier.isEmpty() && !reachedFrom.containsKey(to)) {
+            int u = frontier.poll();
+            for (int e = graph.firstOut(u); e < graph.endOut(u); e++) {
+                int v = graph.outTarget(e);
+                if (graph.outWeight(e) == 0.0 && cluster[v] == cluster[from] && !reachedFrom.containsKey(v)) {
+                    reachedFrom.put(v, u);
+                    frontier.add(v);
+                }
+            }
+        }
+        ArrayDeque<Integer> steps = new ArrayDeque<>();
+        for (int v = to; v != from; v = reachedFrom.get(v))
+            steps.push(v);
+        path.addAll(steps);
+    }
+
+    /**
+     * Returns the cost of walking a chain from one position in its sequence to
+     * another, in either direction.
+     */
+    private double chainCost(int chain, int from, int to) {
+        List<Integer> edges = new ArrayList<>();
+        addChainEdges(chain, from, to, edges);
+        double cost = 0.0;
+        for (int edge : edges)
+            cost += clusterEdgeWeight[edge];
+        return cost;
+    }
+
+    private void addChainEdges(int chain, int from, int to, List<Integer> edges) {
+        int[] sequence = chains.get(chain);
+        int step = to > from ? 1 : -1;
+        for (int i = from; i != to; i += step)
+            edges.add(clusterEdgeByPair.get(pair(sequence[i], sequence[i + step])));
+    }
+
+    private int sourceOf(int searchEdge) {
+        // the search edges are sorted by source, so find the source by bisection
+        int low = 0;
+        int high = clusterCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (searchStart[middle] <= searchEdge)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+        return low;
+    }
+
+    /**
+     * Walks from a pass-through cluster through its neighbour until the first
+     * cluster that is not pass-through, and returns the clusters walked
+     * through, ending with that first other cluster, or null when the walk
+     * comes back around to where it started.
+     */
+    private static List<Integer> walk(int start, int first, boolean[] passThrough, int[][] neighbours) {
+        List<Integer> walked = new ArrayList<>();
+        int previous = start;
+        int current = first;
+        while (passThrough[current]) {
+            if (current == start)
+                return null;
+            walked.add(current);
+            int next = neighbours[current][0] == previous ? neighbours[current][1] : neighbours[current][0];
+            previous = current;
+            current = next;
+        }
+        walked.add(current);
+        return walked;
+    }
+
+    private boolean hasZeroEdge(int from, int to) {
+        for (int e = graph.firstOut(from); e < graph.endOut(from); e++)
+            if (graph.outTarget(e) == to && graph.outWeight(e) == 0.0)
+                return true;
+        return false;
+    }
+
+    private static int find(int[] parent, int u) {
+        while (parent[u] != u) {
+            parent[u] = parent[parent[u]];
+            u = parent[u];
+        }
+        return u;
+    }
+
+    private static long pair(int from, int to) {
+        return ((long) from << 32) | (to & 0xffffffffL);
+    }
+}
@@ -0,0 +1,271 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+/**
+ * This TourPlanner class orders a list of stops into a short route that visits
+ * all of them, starting from the first stop. The costs between stops are
+ * computed with one one-to-all search per stop, so a request with k stops
+ * costs k searches rather than k*k. The stops are then ordered exactly with
+ * dynamic programming over subsets when there are few of them, and otherwise
+ * with a nearest neighbour tour improved by 2-opt and Or-opt moves.
+ */
+public class TourPlanner<NodeType> {
+
+    // tours with at most this many stops are ordered exactly
+    private static final int EXACT_STOP_LIMIT = 13;
+
+    private final CsrGraph<NodeType> graph;
+
+    /**
+     * A route through every stop of a tour request.
+     */
+    public static class Tour<NodeType> {
+        private final List<NodeType> stops;
+        private final double[] legCosts;
+        private final List<NodeType> path;
+
+        Tour(List<NodeType> stops, double[] legCosts, List<NodeType> path) {
+            this.stops = stops;
+            this.legCosts = legCosts;
+            this.path = path;
+        }
+
+        /** @return the stops in the order they are visited */
+        public List<NodeType> getStops() {
+            return Collections.unmodifiableList(stops);
+        }
+
+        /** @return the cost of each leg, from each stop to the next */
+        public double[] getLegCosts() {
+            return legCosts.clone();
+        }
+
+        /** @return the total cost of the tour */
+        public double getCost() {
+            double total = 0.0;
+            for (double leg : legCosts)
+                total += leg;
+            return total;
+        }
+
+        /** @return the data of every node along the route, in order */
+        public List<NodeType> getPath() {
+            return Collections.unmodifiableList(path);
+        }
+    }
+
+    /**
+     * Creates a planner over a snapshot of the graph.
+     *
+     * @param graph the graph whose paths tours follow
+     */
+    public TourPlanner(DijkstraGraph<NodeType, ? extends Number> graph) {
+        this(CsrGraph.of(graph));
+    }
+
+    /**
+     * Creates a planner over a graph snapshot.
+     *
+     * @param graph the graph whose paths tours follow
+     */
+    public TourPlanner(CsrGraph<NodeType> graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Plans a route that starts at the first stop and visits every other stop.
+     *
+     * @param stops         the stops to visit, starting with the first one
+     * @param returnToStart true to end the route back at the first stop
+     * @return the planned route
+     * @throws NoSuchElementException when a stop is not in the graph, or no
+     *                                route can reach every stop
+     */
+    public Tour<NodeType> planTour(List<NodeType> stops, boolean returnToStart) {
+        if (stops.isEmpty())
+            throw new IllegalArgumentException("a tour needs at least one stop");
+        int k = stops.size();
+        int[] ids = new int[k];
+        for (int i = 0; i < k; i++)
+            ids[i] = graph.id(stops.get(i));
+        // one search per stop fills a whole row of the cost matrix
+        List<ShortestPathTree<NodeType>> trees = new ArrayList<>(Collections.nCopies(k, null));
+        IntStream.range(0, k).parallel().forEach(i -> trees.set(i, graph.shortestPathTree(ids[i])));
+        double[][] cost = new double[k][k];
+        for (int i = 0; i < k; i++)
+            for (int j = 0; j < k; j++)
+                cost[i][j] = trees.get(i).cost(ids[j]);
+
+        int[] order = k <= EXACT_STOP_LIMIT ? exactOrder(cost, returnToStart) : heuristicOrder(cost, returnToStart);
+        if (order == null || tourCost(order, cost, returnToStart) == Double.POSITIVE_INFINITY)
+            throw new NoSuchElementException("no route reaches every stop");
+
+        // concatenate the legs, dropping the repeated node where legs meet
+        int legs = returnToStart ? k : k - 1;
+        double[] legCosts = new double[legs];
+        List<NodeType> visited = new ArrayList<>(k);
+        List<NodeType> path = new LinkedList<>();
+        path.add(stops.get(order[0]));
+        for (int leg = 0; leg < legs; leg++) {
+            int from = order[leg];
+            int to = order[(leg + 1) % k];
+            legCosts[leg] = cost[from][to];
+            List<NodeType> legPath = trees.get(from).pathData(ids[to]);
+            path.addAll(legPath.subList(1, legPath.size()));
+        }
+        for (int stop : order)
+            visited.add(stops.get(stop));
+        return new Tour<>(visited, legCosts, path);
+    }
+
+    /**
+     * Finds the cheapest order with dynamic programming over subsets of stops
+     * (the Held-Karp algorithm), keeping stop 0 first.
+     */
+    private static int[] exactOrder(double[][] cost, boolean returnToStart) {
+        int k = cost.length;
+        if (k == 1)
+            return new int[] { 0 };
+        int full = 1 << (k - 1);
+        // best[set][last] is the cheapest route from stop 0 through the stops in
+        // set (stop i is bit i-1), ending at stop last
+        double[][] best = new double[full][k];
+        int[][] previous = new int[full][k];
+        for (double[] row : best)
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        for (int j = 1; j < k; j++) {
+            best[1 << (j - 1)][j] = cost[0][j];
+            previous[1 << (j - 1)][j] = 0;
+        }
+        for (int set = 1; set < full; set++) {
+            for (int last = 1; last < k; last++) {
+                if ((set & (1 << (last - 1))) == 0 || best[set][last] == Double.POSITIVE_INFINITY)
+                    continue;
+                for (int next = 1; next < k; next++) {
+                    int bit = 1 << (next - 1);
+                    if ((set & bit) != 0)
+                        continue;
+                    double candidate = best[set][last] + cost[last][next];
+                    if (candidate < best[set | bit][next]) {
+                        best[set | bit][next] = candidate;
+                        previous[set | bit][next] = last;
+                    }
+                }
+            }
+        }
+        int last = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int j = 1; j < k; j++) {
+            double candidate = best[full - 1][j] + (returnToStart ? cost[j][0] : 0.0);
+            if (candidate < bestCost) {
+                bestCost = candidate;
+                last = j;
+            }
+        }
+        if (last < 0)
+            return null;
+        int[] order = new int[k];
+        for (int position = k - 1, set = full - 1; position > 0; position--) {
+            order[position] = last;
+            int before = previous[set][last];
+            set &= ~(1 << (last - 1));
+            last = before;
+        }
+        return order;
+    }
+
+    /**
+     * Builds a nearest neighbour order starting at stop 0, then improves it
+     * with 2-opt (reversing a run of stops) and Or-opt (moving a run of up to
+     * three stops elsewhere) until neither move helps.
+     */
+    private static int[] heuristicOrder(double[][] cost, boolean returnToStart) {
+        int k = cost.length;
+        int[] order = new int[k];
+        boolean[] used = new boolean[k];
+        used[0] = true;
+        for (int position = 1; position < k; position++) {
+            int from = order[position - 1];
+            int nearest = -1;
+            for (int j = 0; j < k; j++)
+                if (!used[j] && (nearest < 0 || cost[from][j] < cost[from][nearest]))
+                    nearest = j;
+            order[position] = nearest;
+            used[nearest] = true;
+        }
+        double current = tourCost(order, cost, returnToStart);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            // 2-opt: reverse order[i..j], keeping the first stop in place
+            for (int i = 1; i < k - 1; i++) {
+                for (int j = i + 1; j < k; j++) {
+                    reverse(order, i, j);
+                    double candidate = tourCost(order, cost, returnToStart);
+                    if (candidate < current - 1e-9) {
+                        current = candidate;
+                        improved = true;
+                    } else {
+                        reverse(order, i, j);
+                    }
+                }
+            }
+            // Or-opt: move a run of 1 to 3 stops to another position
+            for (int length = 1; length <= 3; length++) {
+                for (int i = 1; i + length <= k; i++) {
+                    for (int target = 1; target + length <= k; target++) {
+                        if (target == i)
+                            continue;
+                        int[] candidateOrder = moveRun(order, i, length, target);
+                        double candidate = tourCost(candidateOrder, cost, returnToStart);
+                        if (candidate < current - 1e-9) {
+                            order = candidateOrder;
+                            current = candidate;
+                            improved = true;
+                        }
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    private static double tourCost(int[] order, double[][] cost, boolean returnToStart) {
+        double total = 0.0;
+        for (int i = 0; i + 1 < order.length; i++)
+            total += cost[order[i]][order[i + 1]];
+        if (returnToStart)
+            total += cost[order[order.length - 1]][order[0]];
+        return total;
+    }
+
+    private static void reverse(int[] order, int i, int j) {
+        for (; i < j; i++, j--) {
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    /**
+     * Returns a copy of order with the run of stops starting at index from
+     * moved so that it starts at index target.
+     */
+    private static int[] moveRun(int[] order, int from, int length, int target) {
+        List<Integer> stops = new ArrayList<>(order.length);
+        for (int stop : order)
+            stops.add(stop);
+        List<Integer> run = new ArrayList<>(stops.subList(from, from + length));
+        stops.subList(from, from + length).clear();
+        stops.addAll(target, run);
+        int[] moved = new int[order.length];
+        for (int i = 0; i < moved.length; i++)
+            moved[i] = stops.get(i);
+        return moved;
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * This UndirectedDijkstraGraph class is a DijkstraGraph whose edges can be
+ * traversed in both directions. Each pair of connected nodes is stored as a
+ * single Edge, which is referenced once from each of its two nodes: every
+ * node keeps one list of incident edges, used as both its edgesLeaving and
+ * its edgesEntering list. Inserting an edge from pred to succ therefore also
+ * connects succ to pred, and getEdgeCount returns the number of connected
+ * pairs rather than twice that number.
+ */
+public class UndirectedDijkstraGraph<NodeType, EdgeType extends Number>
+        extends DijkstraGraph<NodeType, EdgeType> {
+
+    /**
+     * Constructor that sets the map that the graph uses.
+     */
+    public UndirectedDijkstraGraph() {
+        super();
+    }
+
+    // incident edges are stored in an array list, which needs far less
+    // memory per edge than the linked list cells of a directed graph
+    @Override
+    protected List<Edge> newEdgeList() {
+        return new ArrayList<>(4);
+    }
+
+    // the same list of incident edges serves as leaving and entering list
+    @Override
+    protected List<Edge> newEnteringList(List<Edge> edgesLeaving) {
+        return edgesLeaving;
+    }
+
+    @Override
+    protected void linkEdge(Edge edge) {
+        edge.predecessor.edgesLeaving.add(edge);
+        // a self loop is stored only once in its node's list
+        if (edge.successor != edge.predecessor)
+            edge.successor.edgesLeaving.add(edge);
+    }
+
+    /**
+     * Remove a node from the graph.
+     * And also remove all edges adjacent to that node.
+     *
+     * @param data is the data item stored in the node to be removed
+     * @return true if a vertex with data is found and removed, or
+     *         false if that data value is not found in the graph
+     * @throws NullPointerException if data is null
+     */
+    @Override
+    public boolean removeNode(NodeType data) {
+        if (!nodes.containsKey(data))
+            return false; // throws NPE when data==null
+        Node oldNode = detachNode(data);
+        // remove every incident edge from the list of the node at its other end
+        for (Edge edge : oldNode.edgesLeaving) {
+            Node other = opposite(edge, oldNode);
+            if (other != oldNode)
+                other.edgesLeaving.remove(edge);
+        }
+        this.edgeCount -= oldNode.edgesLeaving.size();
+        this.version++;
+        return true;
+    }
+
+    @Override
+    protected int countEdges(Node node) {
+        return node.edgesLeaving.size();
+    }
+
+    @Override
+    protected Edge getEdgeHelper(NodeType pred, NodeType succ) {
+        Node predNode = nodes.get(pred);
+        // search for the edge through the list of edges incident to pred
+        for (Edge edge : predNode.edgesLeaving)
+            if (opposite(edge, predNode).data.equals(succ))
+                return edge;
+        // when no such edge can be found, throw NSE
+        throw new NoSuchElementException("No edge between " + pred.toString() + " and " +
+                succ.toString());
+    }
+}